@@ -1,15 +1,22 @@
 import java.awt.Point;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class holds the A* Search algorithm. As the game only allows 4 directions
- * of movement, it utilises the Manhattan heuristic. This code uses HashMaps to
- * keep track of every point's f and g value. It is also used to keep track of
- * the node it came from. In this code, the A* Search does not cut down any trees
- * it sees in the first run. This is done so that the program does not recklessly
- * cut down any trees it sees. Once the search is completed, it then runs a second
- * search with the ability to cut down trees. This proved to be useful as there
- * are cases where cut down trees, traveling over water to a point of no return.
+ * of movement, it utilises the Manhattan heuristic. This code uses grids borrowed
+ * from the thread's pool to keep track of every point's f and g value, and of
+ * the node it came from. They are given back once the path has been read off
+ * them at the end of the search. When given landmark distances, the heuristic is the
+ * larger of the Manhattan distance and the landmark lower bound, which is
+ * still never more than the real distance but much closer to it on maps full
+ * of walls and water. When it is given the dead ends of the map and they are
+ * turned on, it skips every dead end that neither the start nor the goal is in.
+ * In this code, the A* Search does not recklessly cut down any trees it sees.
+ * Each tree chopped costs TREE_COST steps, which is larger than any possible
+ * path length, so a single search first minimises the number of trees chopped
+ * and then the number of steps taken. This proved to be useful as there are
+ * cases where cut down trees, traveling over water to a point of no return.
  * 
  * @author Mendel Liang, Alexander Ong
  */
@@ -20,135 +27,195 @@ public class AStarSearch {
    private Map<Point, Character> world;
    
    private static int INFINITY = 999999999; //large number for representing infinity
+   //Cost of chopping a tree. Larger than the longest possible path, so fewer trees always wins.
+   static final int TREE_COST = (2 * Model.MAXIMUM_X + 1) * (2 * Model.MAXIMUM_Y + 1);
    
    private Point start;
    private Point goal;
-   private Map<Point, Integer> fScore;
-   private Map<Point, Integer> gScore;
-   private Map<Point, Point> cameFrom;
-
-   private boolean needToCutTree;
+   private IntGrid fScore;
+   private IntGrid gScore;
+   private IntGrid cameFrom;
+   //The path found, from the tile after the start to the goal, or null if there is none
+   private int[] pathTiles;
+   private Landmarks landmarks;
+   //Whether the landmarks hold for the tools this search was run with
+   private boolean useLandmarks;
+   private DeadEnds deadEnds;
+   //The dead end tiles this search may still enter, or null if it doesn't skip any
+   private BitSet pockets;
    
    public AStarSearch(Map<Point,Character> world, Point start, Point goal) {
+      this(world, start, goal, null);
+   }
+   /**
+    * Creates a search that uses landmark distances to guide it.
+    * @param world is the known world
+    * @param start is the tile to search from
+    * @param goal is the tile to search to
+    * @param landmarks are distances measured on the same world, or null to use only the Manhattan distance
+    */
+   public AStarSearch(Map<Point,Character> world, Point start, Point goal, Landmarks landmarks) {
+      this(world, start, goal, landmarks, null);
+   }
+   /**
+    * Creates a search that uses landmark distances to guide it and skips dead ends.
+    * @param world is the known world
+    * @param start is the tile to search from
+    * @param goal is the tile to search to
+    * @param landmarks are distances measured on the same world, or null to use only the Manhattan distance
+    * @param deadEnds are the dead ends of the same world, or null to skip none
+    */
+   public AStarSearch(Map<Point,Character> world, Point start, Point goal, Landmarks landmarks, DeadEnds deadEnds) {
+      this.landmarks = landmarks;
+      this.deadEnds = deadEnds;
       this.world = world;
       this.start = start;
       this.goal = goal;
-      this.fScore = new HashMap<Point, Integer>();
-      this.gScore = new HashMap<Point, Integer>();
-      this.cameFrom = new HashMap<Point, Point>();
-      this.needToCutTree = false;
    }
    private class FComparator implements Comparator<Point>{
       @Override
       public int compare(Point a, Point b) {
-         return fScore.get(a) - fScore.get(b);
+         return fScore.get(Model.index(a.x, a.y)) - fScore.get(Model.index(b.x, b.y));
       }
    }
    /**
     * This must be called before using any other functions for this class.
-    * Populates the 'cameFrom' HashMap with the shortest distance predecessor tile.
-    * Runs once without the ability to cut trees
-    * If no path is found, the search is run again with the ability to cut trees.
+    * Finds the path through the 'cameFrom' grid of cheapest predecessor tiles.
+    * Paths that chop fewer trees are always preferred, ties are broken on path length.
     * @param haveAxe a boolean which reflects whether the AI has an axe
     * @param haveKey a boolean which reflects whether the AI has a key
     * @param haveRaft a boolean which reflects wether the AI has a raft
+    * @throws CancellationException if the thread is interrupted while searching
     */
    public void aStar(boolean haveAxe, boolean haveKey, boolean haveRaft){
-      PriorityQueue<Point> pq = new PriorityQueue<Point>(11, new FComparator());
-      
-      Set<Point> visited = new HashSet<Point>();
-      
-      for(int x = -Model.MAXIMUM_X; x <= Model.MAXIMUM_X; x++ ) {
-         for(int y = -Model.MAXIMUM_Y; y <= Model.MAXIMUM_Y; y++) {
-            fScore.put(new Point(x,y), INFINITY);
-            gScore.put(new Point(x,y), INFINITY);
+      long allocationMark = AllocationProfile.start();
+      useLandmarks = (landmarks != null) && landmarks.covers(haveAxe, haveKey, haveRaft);
+      //A landmark that reaches the start but not the goal proves there is no path at all
+      if(!useLandmarks || !landmarks.separates(start.x, start.y, goal.x, goal.y)) {
+         if(DeadEnds.ENABLED && deadEnds != null && deadEnds.covers(haveAxe, haveKey, haveRaft)) {
+            pockets = deadEnds.pocketsOf(start, goal);
          }
+         fScore = IntGrid.borrow(INFINITY);
+         gScore = IntGrid.borrow(INFINITY);
+         cameFrom = IntGrid.borrow(-1);
+         search(haveAxe, haveKey, haveRaft);
+         keepPath();
+         IntGrid.giveBack(fScore);
+         IntGrid.giveBack(gScore);
+         IntGrid.giveBack(cameFrom);
+         fScore = gScore = cameFrom = null;
       }
+      AllocationProfile.end(AllocationProfile.ASTAR, allocationMark);
+   }
+   /**
+    * Runs the search for aStar.
+    */
+   private void search(boolean haveAxe, boolean haveKey, boolean haveRaft) {
+      PriorityQueue<Point> pq = new PriorityQueue<Point>(11, new FComparator());
+      
+      BitSet visited = new BitSet(Model.WIDTH * Model.HEIGHT);
       
-      gScore.put(this.start, 0);
-      fScore.put(this.start, manhattanDistance(start,goal));
+      gScore.set(Model.index(start.x, start.y), 0);
+      fScore.set(Model.index(start.x, start.y), heuristic(start));
       
       pq.add(start);
       
+      int expanded = 0;
       while(pq.size() != 0) {
+         if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+         }
          Point currTile = pq.poll();
+         expanded++;
          if(currTile.equals(goal)) {
+            SearchStats.addExpanded(expanded);
             return;
          }
-         visited.add(currTile);
+         visited.set(Model.index(currTile.x, currTile.y));
          for (int i = 0; i < 4; i++) {
-            int x = (int)currTile.getX();
-            int y = (int)currTile.getY();
-            switch(i) {
-            case Model.UP:
-               y += 1;
-               break;
-            case Model.RIGHT:
-               x += 1;
-               break;
-            case Model.DOWN:
-               y -= 1;
-               break;
-            case Model.LEFT:
-               x -= 1;
-               break;
-            }
-            Point nextTile = new Point(x,y);
-            if(visited.contains(nextTile)) {
+            int x = (int)currTile.getX() + Movement.DX[i];
+            int y = (int)currTile.getY() + Movement.DY[i];
+            if(!Model.inBounds(x, y) || visited.get(Model.index(x, y))) {
                continue;
             }
+            Point nextTile = new Point(x,y);
+            int next = Model.index(x, y);
             if(this.world.get(start) == Model.WATER && this.world.get(goal) == Model.WATER && this.world.get(nextTile) != Model.WATER) {
                continue;
             }
-            //Try to find a path without cutting down a tree first.
-            if(needToCutTree == true) {
-               if (!Model.canPotentiallyMoveOntoTile(world.get(nextTile), haveAxe, haveKey, haveRaft )) {
-                  continue;             
-               }
-            }
-            else {
-               if (!Model.canPotentiallyMoveOntoTile(world.get(nextTile), false, haveKey, haveRaft )) {
-                  continue;             
-               }
+            if (!Model.canPotentiallyMoveOntoTile(world.get(nextTile), haveAxe, haveKey, haveRaft )) {
+               continue;             
             }
-            int tentative_gScore = gScore.get(currTile) + 1;
-            if (tentative_gScore >= gScore.get(nextTile)) {
+            //A dead end only leads back out the way it was entered
+            if(pockets != null && deadEnds.isDeadEnd(x, y) && !pockets.get(Model.index(x, y))) {
                continue;
             }
-            cameFrom.put(nextTile, currTile);
-            gScore.put(nextTile, tentative_gScore);
-            fScore.put(nextTile, tentative_gScore + manhattanDistance(nextTile, this.goal));
-            if(!pq.contains(nextTile)) {
-               pq.add(nextTile);
+            //Chopping a tree is only worth it if there is no path avoiding trees.
+            int stepCost = 1;
+            if(world.get(nextTile) == Model.TREE) {
+               stepCost += TREE_COST;
+            }
+            int tentative_gScore = gScore.get(Model.index(currTile.x, currTile.y)) + stepCost;
+            if (tentative_gScore >= gScore.get(next)) {
+               continue;
             }
+            cameFrom.set(next, Model.index(currTile.x, currTile.y));
+            gScore.set(next, tentative_gScore);
+            fScore.set(next, tentative_gScore + heuristic(nextTile));
+            //Re-insert so the queue orders on the updated fScore
+            pq.remove(nextTile);
+            pq.add(nextTile);
          }
       }
-      if(!reachable() && needToCutTree == false) {
-         needToCutTree = true;
-         aStar(haveAxe, haveKey, haveRaft);
-      }
+      SearchStats.addExpanded(expanded);
    }
    /**
     * Called to get the path from start to goal, in correct order.
-    *
-    * @return a linked list containing the path from the start to the finish, if it exists.
-    * Otherwise returns an empty list.
+    * Adds nothing if there is no path.
+    * @param path is the buffer to add the path to, not including the start
     */
-   public LinkedList<Point> reconstructPath(){
-      LinkedList<Point> path = new LinkedList<Point>();
-      Point curr = goal;
-      while(cameFrom.get(curr) != null) {
-         path.addFirst(curr);
-         curr = cameFrom.get(curr);
+   public void reconstructPath(PathBuffer path){
+      if(pathTiles == null) {
+         return;
+      }
+      for(int tile : pathTiles) {
+         path.add(tile);
+      }
+   }
+   /**
+    * Reads the path off the 'cameFrom' grid before it is given back.
+    */
+   private void keepPath() {
+      int length = 0;
+      for(int curr = Model.index(goal.x, goal.y); cameFrom.get(curr) != -1; curr = cameFrom.get(curr)) {
+         length++;
+      }
+      if(length == 0) {
+         return;
+      }
+      pathTiles = new int[length];
+      for(int curr = Model.index(goal.x, goal.y); cameFrom.get(curr) != -1; curr = cameFrom.get(curr)) {
+         pathTiles[--length] = curr;
       }
-      return path;
    }
    /**
     * A reachability tester for whether it is possible to go from start to goal.
     * @return a boolean stating whether it is possible to travel from start to goal.
     */
    public boolean reachable() {
-      return (cameFrom.get(goal) != null);
+      return (pathTiles != null);
+   }
+   /**
+    * Gives the lower bound on the steps from a tile to the goal that orders the search.
+    * @param tile is the tile to measure from
+    * @return the Manhattan distance, or the landmark bound if that is larger
+    */
+   private int heuristic(Point tile) {
+      int h = manhattanDistance(tile, this.goal);
+      if(useLandmarks) {
+         h = Math.max(h, landmarks.lowerBound(tile.x, tile.y, goal.x, goal.y));
+      }
+      return h;
    }
    /**
     * The heuristic used for this search. Manhattan distance is commonly used in cases where
@@ -0,0 +1,103 @@
+/**
+ * A queue of actions kept in a circular char array. Unlike a
+ * LinkedList<Character>, adding and taking actions allocates nothing once the
+ * array is big enough, which matters since a long path adds several actions
+ * per step.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class ActionBuffer {
+   
+   private char[] actions;
+   private int head;
+   private int size;
+   
+   public ActionBuffer() {
+      this.actions = new char[64];
+      this.head = 0;
+      this.size = 0;
+   }
+   public boolean isEmpty() {
+      return size == 0;
+   }
+   public int size() {
+      return size;
+   }
+   public void clear() {
+      head = 0;
+      size = 0;
+   }
+   /**
+    * Adds an action to the back of the queue.
+    * @param action is the action to add
+    */
+   public void add(char action) {
+      ensureCapacity(size + 1);
+      actions[(head + size) & (actions.length - 1)] = action;
+      size++;
+   }
+   /**
+    * Adds a list of actions to the back of the queue, in order.
+    * @param more are the actions to add
+    */
+   public void addAll(char[] more) {
+      for(char action : more) {
+         add(action);
+      }
+   }
+   /**
+    * Adds a list of actions to the front of the queue, so they come out first and in order.
+    * @param more are the actions to add
+    */
+   public void addAllFirst(char[] more) {
+      ensureCapacity(size + more.length);
+      for(int i = more.length - 1; i >= 0; i--) {
+         head = (head - 1) & (actions.length - 1);
+         actions[head] = more[i];
+         size++;
+      }
+   }
+   /**
+    * Takes the action at the front of the queue.
+    * @return the action, or 0 if the queue is empty
+    */
+   public char poll() {
+      if(size == 0) {
+         return 0;
+      }
+      char action = actions[head];
+      head = (head + 1) & (actions.length - 1);
+      size--;
+      return action;
+   }
+   /**
+    * Gives an action without taking it off the queue.
+    * @param i is how far from the front the action is
+    * @return the action
+    */
+   public char get(int i) {
+      if(i < 0 || i >= size) {
+         throw new IndexOutOfBoundsException("Action " + i + " of " + size);
+      }
+      return actions[(head + i) & (actions.length - 1)];
+   }
+   /**
+    * Grows the array, keeping its length a power of two so positions wrap with a mask.
+    * @param capacity is the number of actions that must fit
+    */
+   private void ensureCapacity(int capacity) {
+      if(capacity <= actions.length) {
+         return;
+      }
+      int length = actions.length;
+      while(length < capacity) {
+         length <<= 1;
+      }
+      char[] grown = new char[length];
+      for(int i = 0; i < size; i++) {
+         grown[i] = actions[(head + i) & (actions.length - 1)];
+      }
+      actions = grown;
+      head = 0;
+   }
+}
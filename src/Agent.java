@@ -26,7 +26,6 @@
 
 import java.util.*;
 import java.io.*;
-import java.net.*;
 
 /**
  * This is a gaming AI where the agent must traverse through land and water
@@ -43,15 +42,79 @@ import java.net.*;
  */
 
 public class Agent {
+   // how long a daemon waits before trying to reach the next engine again
+   final static long RECONNECT_MILLIS = 100;
+
+   // features -x can switch on, each read from the system property raft.<feature>
+   // when the class using it is first loaded, which is after the arguments are read
+   final static String[] FEATURES = { "offheap", "profile", "bidirectional", "deadends" };
+
+   // small made up maps played before connecting with -w, so the search and
+   // decision code is compiled before the first real action is asked for
+   final static String[] WARM_UP_MAPS = {
+      "~~~~~~~~~~~~~~~~~~~~~~\n"+
+      "~~~~~~~~~~~~~~~~~~~~~~\n"+
+      "~~  a   ****-****  ~~~\n"+
+      "~~      *       *  ~~~\n"+
+      "~~ TT   *   $   *  ~~~\n"+
+      "~~      *********  ~~~\n"+
+      "~~  ^      T       ~~~\n"+
+      "~~ **  TT    k  d  ~~~\n"+
+      "~~~~~~~~~~~~~~~~~~~~~~\n"+
+      "~~~~~~~~~~~~~~~~~~~~~~\n",
+
+      "~~~~~~~~~~~~~~~~~~~~~~~~~~\n"+
+      "~~~~~~~~~~~~~~~~~~~~~~~~~~\n"+
+      "~~  a     ~~~~~~   $   ~~~\n"+
+      "~~    T   ~~~~~~  T    ~~~\n"+
+      "~~  >     ~~~~~~  ***  ~~~\n"+
+      "~~ TT  k  ~~~~~~  d    ~~~\n"+
+      "~~~~~~~~~~~~~~~~~~~~~~~~~~\n"+
+      "~~~~~~~~~~~~~~~~~~~~~~~~~~\n"
+   };
+   // moves per warm-up game, so that the time budget is checked often
+   final static int WARM_UP_MOVES = 30;
+
    private Decider decider;
+   // timing of the game being played, for the daemon's report
+   private long gameStart, gameEnd;
+   private int decisions;
+   private long totalDecisionNanos, maxDecisionNanos;
    public Agent() {
       decider = new Decider();
    }
+   public Agent(long timeBudgetNanos) {
+      decider = new Decider(timeBudgetNanos);
+   }
    
    public char get_action( char view[][] ) {
       return decider.make_decision(view);
    }
 
+   public void plan_ahead() {
+      decider.plan_ahead();
+   }
+
+   public char[] queued_actions( int max ) {
+      return decider.queued_moves(max);
+   }
+
+   public void score_frontier( boolean scoreFrontier ) {
+      decider.setFrontierScoring(scoreFrontier);
+   }
+
+   public void try_rollouts( long budgetNanos ) {
+      decider.setRolloutBudget(budgetNanos);
+   }
+
+   public void race_strategies( long budgetNanos ) {
+      decider.setPortfolioBudget(budgetNanos);
+   }
+
+   public void finish() {
+      decider.shutdown();
+   }
+
    public char get_action_human( char view[][] ) {
 
       // REPLACE THIS CODE WITH AI TO CHOOSE ACTION
@@ -101,60 +164,265 @@ public class Agent {
 
    public static void main( String[] args )
    {
-      InputStream in  = null;
-      OutputStream out= null;
-      Socket socket   = null;
-      Agent  agent    = new Agent();
-      char   view[][] = new char[5][5];
-      char   action   = 'F';
-      int port;
-      int ch;
-      int i,j;
+      Transport transport = null;
+      Agent  agent    = null;
+      int port = 0;
+      String file = null;
+      long budget = 0;
+      boolean speculate = false;
+      boolean scoreFrontier = false;
+      long rollouts = 0;
+      long portfolio = 0;
+      boolean batch = false;
+      boolean daemon = false;
+      long warmUp = 0;
+      int games;
+      int k;
 
-      if( args.length < 2 ) {
-         System.out.println("Usage: java Agent -p <port>\n");
+      k=0;
+      while( k < args.length ) {
+         if(( args[k].compareTo("-p") == 0 )&&( k+1 < args.length )) {
+            port = Integer.parseInt( args[k+1] );
+            k += 2;
+         }
+         else if(( args[k].compareTo("-t") == 0 )&&( k+1 < args.length )) {
+            // time budget per action in milliseconds, 0 waits for the full plan
+            budget = Long.parseLong( args[k+1] ) * 1000000L;
+            k += 2;
+         }
+         else if( args[k].compareTo("-s") == 0 ) {
+            // plan the next move while waiting for the next view
+            speculate = true;
+            k++;
+         }
+         else if(( args[k].compareTo("-f") == 0 )&&( k+1 < args.length )) {
+            // talk to an engine on this machine through a shared memory mapped file
+            file = args[k+1];
+            k += 2;
+         }
+         else if( args[k].compareTo("-b") == 0 ) {
+            // send queued actions in batches, the engine must also be run with -b
+            batch = true;
+            k++;
+         }
+         else if( args[k].compareTo("-d") == 0 ) {
+            // stay running and play one engine after another, keeping the JIT warm
+            daemon = true;
+            k++;
+         }
+         else if(( args[k].compareTo("-w") == 0 )&&( k+1 < args.length )) {
+            // warm up the JIT on made up maps for this many milliseconds before connecting
+            warmUp = Long.parseLong( args[k+1] );
+            k += 2;
+         }
+         else if( args[k].compareTo("-e") == 0 ) {
+            // explore where the most tiles are revealed per move
+            scoreFrontier = true;
+            k++;
+         }
+         else if(( args[k].compareTo("-r") == 0 )&&( k+1 < args.length )) {
+            // try plans that land the raft or use dynamite on made up maps for this many milliseconds
+            rollouts = Long.parseLong( args[k+1] ) * 1000000L;
+            k += 2;
+         }
+         else if(( args[k].compareTo("-x") == 0 )&&( k+1 < args.length )&&( is_feature( args[k+1] ))) {
+            // switch on a feature, the same as starting the JVM with -Draft.<feature>=true
+            System.setProperty( "raft."+ args[k+1], "true" );
+            k += 2;
+         }
+         else if(( args[k].compareTo("-o") == 0 )&&( k+1 < args.length )) {
+            // race other strategies against the priority list for this many milliseconds each plan
+            portfolio = Long.parseLong( args[k+1] ) * 1000000L;
+            k += 2;
+         }
+         else {
+            port = 0;
+            file = null;
+            break;
+         }
+      }
+      if(( port == 0 )&&( file == null )) {
+         System.out.println("Usage: java Agent -p <port> | -f <file> [-t <ms per action>] [-s] [-e] [-r <ms>] [-o <ms>] [-b] [-d] [-w <ms>] [-x <feature>]...");
+         System.out.println("Features for -x: "+ String.join( ", ", FEATURES ) +"\n");
          System.exit(-1);
       }
+      if( warmUp > 0 ) {
+         warm_up( warmUp );
+      }
+      games = 0;
+      do {
+         transport = open_transport( port, file, daemon );
+         if( transport == null ) {
+            System.out.println("Could not bind to port: "+port);
+            System.exit(-1);
+         }
+         agent = new Agent( budget );
+         agent.score_frontier( scoreFrontier );
+         agent.try_rollouts( rollouts );
+         agent.race_strategies( portfolio );
+         games++;
+         try {
+            agent.play( transport, speculate, batch );
+            if( daemon ) {
+               System.out.println( "Game "+ games +": "+ agent.latency_report() );
+            }
+         }
+         catch( IOException e ) {
+            System.out.println("Lost connection to port: "+ port );
+            if( !daemon ) {
+               System.exit(-1);
+            }
+         }
+         finally {
+            agent.finish();
+            try {
+               transport.close();
+            }
+            catch( IOException e ) {}
+         }
+      } while( daemon );
+      // the engine closed the connection at the end of the game
+      System.exit(-1);
+   }
 
-      port = Integer.parseInt( args[1] );
+   /**
+    * Whether -x can switch on the given feature.
+    * @param name is the feature's name
+    * @return whether it is one of FEATURES
+    */
+   static boolean is_feature( String name )
+   {
+      return Arrays.asList( FEATURES ).contains( name );
+   }
 
-      try { // open socket to Game Engine
-         socket = new Socket( "localhost", port );
-         in  = socket.getInputStream();
-         out = socket.getOutputStream();
-      }
-      catch( IOException e ) {
-         System.out.println("Could not bind to port: "+port);
-         System.exit(-1);
+   /**
+    * Plays the warm-up maps in this process until the time is up, finishing the
+    * game in progress, so the hot code is compiled before the engine is reached.
+    * @param millis is how long to keep playing
+    */
+   static void warm_up( long millis )
+   {
+      long deadline = System.nanoTime() + millis * 1000000L;
+      int game = 0;
+      do {
+         Agent agent = new Agent();
+         try {
+            Raft.play( new BufferedReader( new StringReader( WARM_UP_MAPS[game % WARM_UP_MAPS.length] )),
+                  agent, WARM_UP_MOVES );
+         }
+         catch( IOException e ) {} // the maps are in memory
+         finally {
+            agent.finish();
+         }
+         game++;
+      } while( System.nanoTime() < deadline );
+   }
+
+   /**
+    * Connects to the engine. A daemon keeps trying until an engine is there to connect to.
+    * @return the transport, or null if there is no engine and this is not a daemon
+    */
+   private static Transport open_transport( int port, String file, boolean daemon )
+   {
+      while( true ) {
+         try {
+            if( file != null ) {
+               return MappedTransport.connect( file );
+            }
+            return SocketTransport.connect( "localhost", port );
+         }
+         catch( IOException e ) {
+            if( !daemon ) {
+               return null;
+            }
+         }
+         try {
+            Thread.sleep( RECONNECT_MILLIS );
+         }
+         catch( InterruptedException e ) {
+            return null;
+         }
       }
+   }
+
+   /**
+    * Plays one game against the engine at the other end of the transport,
+    * returning when the engine closes it at the end of the game.
+    * @param transport is the connection to the engine
+    * @param speculate is whether to plan the next move while waiting for its view
+    * @param batch is whether to send queued actions in batches
+    * @throws IOException if the connection fails
+    */
+   void play( Transport transport, boolean speculate, boolean batch ) throws IOException
+   {
+      InputStream in   = new BufferedInputStream( transport.getInputStream() );
+      OutputStream out = transport.getOutputStream();
+      char view[][]    = new char[5][5];
+      char action;
+      int pendingViews = 0;
+      int ch;
+      int i,j,k;
+      long start;
 
-      try { // scan 5-by-5 wintow around current location
-         while( true ) {
-            for( i=0; i < 5; i++ ) {
-               for( j=0; j < 5; j++ ) {
-                  if( !(( i == 2 )&&( j == 2 ))) {
-                     ch = in.read();
-                     if( ch == -1 ) {
-                        System.exit(-1);
-                     }
-                     view[i][j] = (char) ch;
+      gameStart = System.nanoTime();
+      while( true ) { // scan 5-by-5 wintow around current location
+         for( i=0; i < 5; i++ ) {
+            for( j=0; j < 5; j++ ) {
+               if( !(( i == 2 )&&( j == 2 ))) {
+                  ch = in.read();
+                  if( ch == -1 ) {
+                     gameEnd = System.nanoTime();
+                     return;
                   }
+                  view[i][j] = (char) ch;
                }
             }
-            //agent.print_view( view ); // COMMENT THIS OUT BEFORE SUBMISSION
-            action = agent.get_action( view );
+         }
+         //print_view( view ); // COMMENT THIS OUT BEFORE SUBMISSION
+         start = System.nanoTime();
+         action = get_action( view );
+         record_latency( System.nanoTime() - start );
+         if( pendingViews > 0 ) {
+            // this action was already sent as part of the last batch
+            pendingViews--;
+            continue;
+         }
+         if( batch ) {
+            // header byte: top bit asks for every view back, low 7 bits count the actions
+            char[] queued = queued_actions( Raft.MAX_BATCH - 1 );
+            byte[] message = new byte[queued.length + 2];
+            message[0] = (byte)( Raft.ALL_VIEWS | ( queued.length + 1 ));
+            message[1] = (byte) action;
+            for( k=0; k < queued.length; k++ ) {
+               message[k+2] = (byte) queued[k];
+            }
+            out.write( message );
+            pendingViews = queued.length;
+         }
+         else {
             out.write( action );
          }
-      }
-      catch( IOException e ) {
-         System.out.println("Lost connection to port: "+ port );
-         System.exit(-1);
-      }
-      finally {
-         try {
-            socket.close();
+         if( speculate && pendingViews == 0 ) {
+            plan_ahead();
          }
-         catch( IOException e ) {}
       }
    }
+
+   private void record_latency( long nanos )
+   {
+      decisions++;
+      totalDecisionNanos += nanos;
+      maxDecisionNanos = Math.max( maxDecisionNanos, nanos );
+   }
+
+   /**
+    * Describes how long the last game took and how long its decisions took.
+    * @return the report
+    */
+   String latency_report()
+   {
+      return decisions +" decisions in "+ (( gameEnd - gameStart ) / 1000000 ) +" ms, taking "
+            + (( decisions == 0 ) ? 0 : totalDecisionNanos / decisions / 1000 ) +" us on average and "
+            + ( maxDecisionNanos / 1000 ) +" us at most";
+   }
 }
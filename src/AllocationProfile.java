@@ -0,0 +1,108 @@
+import java.lang.management.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures how much memory the agent allocates in each phase of a decision,
+ * when the JVM is started with -Draft.profile=true or the agent with -x profile.
+ * Each phase is timed on the thread that runs it with the bytes that thread
+ * has allocated, so work done by the background planner is counted as well. A
+ * summary of the bytes per phase and of the garbage collections that followed
+ * is printed when the JVM exits, which is when the game ends.
+ *
+ * Phases nest: a decision includes the model update and any searches made
+ * while deciding, so the rows of the summary do not add up.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public final class AllocationProfile {
+
+   static final boolean ENABLED = Boolean.getBoolean("raft.profile");
+
+   //The phases that are measured
+   static final int UPDATE = 0;
+   static final int DECISION = 1;
+   static final int ASTAR = 2;
+   private static final String[] PHASE_NAMES = { "Model.update", "Decider.make_decision", "AStarSearch.aStar" };
+
+   private static final com.sun.management.ThreadMXBean THREADS = threads();
+   private static final AtomicLongArray calls = new AtomicLongArray(PHASE_NAMES.length);
+   private static final AtomicLongArray bytes = new AtomicLongArray(PHASE_NAMES.length);
+
+   static {
+      if(ENABLED) {
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+               System.err.print(summary());
+            }
+         });
+      }
+   }
+
+   private AllocationProfile() {
+   }
+   /**
+    * Gives the bean that counts allocated bytes, if this JVM has one that can.
+    * @return the bean, or null if allocations can't be measured
+    */
+   private static com.sun.management.ThreadMXBean threads() {
+      if(!ENABLED) {
+         return null;
+      }
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if(!(threads instanceof com.sun.management.ThreadMXBean)) {
+         return null;
+      }
+      com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+      if(!sunThreads.isThreadAllocatedMemorySupported()) {
+         return null;
+      }
+      sunThreads.setThreadAllocatedMemoryEnabled(true);
+      return sunThreads;
+   }
+   /**
+    * Marks the start of a phase on the current thread.
+    * @return the mark to pass to end, or 0 when profiling is off
+    */
+   static long start() {
+      if(THREADS == null) {
+         return 0;
+      }
+      return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+   /**
+    * Marks the end of a phase on the current thread, adding what it allocated to the totals.
+    * @param phase is the phase that ended
+    * @param mark is what start gave when the phase began
+    */
+   static void end(int phase, long mark) {
+      if(THREADS == null) {
+         return;
+      }
+      calls.incrementAndGet(phase);
+      bytes.addAndGet(phase, THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - mark);
+   }
+   /**
+    * Describes the bytes allocated in each phase and the collections made so far.
+    * @return the report, one line per phase and per garbage collector
+    */
+   static String summary() {
+      StringBuilder report = new StringBuilder();
+      report.append("Allocation profile\n");
+      if(THREADS == null) {
+         report.append("  this JVM can't measure allocated bytes per thread\n");
+         return report.toString();
+      }
+      for(int phase = 0; phase < PHASE_NAMES.length; phase++) {
+         long n = calls.get(phase);
+         long total = bytes.get(phase);
+         report.append(String.format("  %-24s %8d calls %12d KB %10d bytes/call%n",
+               PHASE_NAMES[phase], n, total / 1024, (n == 0) ? 0 : total / n));
+      }
+      for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+         report.append(String.format("  %-24s %8d collections %8d ms%n",
+               gc.getName(), gc.getCollectionCount(), gc.getCollectionTime()));
+      }
+      return report.toString();
+   }
+}
@@ -0,0 +1,438 @@
+import java.io.*;
+import java.net.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays every bundled map and checks that the agent has not got worse. For
+ * each map it records the moves taken to win, the CPU time spent deciding,
+ * the peak heap used and the nodes expanded by the searches, and compares
+ * them with a baseline file. Any regression beyond the allowed tolerance is
+ * reported and makes the run exit with a failure status.
+ *
+ * Each map is played in its own JVM so that the peak heap of one game does
+ * not carry over into the next, and so a game that never finishes can be
+ * stopped after a time limit. Maps that did not finish in the baseline are
+ * only checked for finishing, as their other numbers depend on when they
+ * were stopped.
+ *
+ * Usage: java Benchmark [-d dir] [-f baseline] [-t seconds] [-u]
+ *   -d is the directory holding the maps, s*.in and mytests/*.in are played
+ *   -f is the baseline file, perf-baseline.txt by default
+ *   -t is the longest a single game may run
+ *   -u writes the results as the new baseline instead of comparing
+ *
+ * java Benchmark -startup [-n runs] [-j "jvm options"] [-a "agent options"]
+ * instead measures how long a new agent JVM takes to answer the first view of
+ * s0.in, both from launch and from the view being sent, so that startup
+ * options such as -w or a class data sharing archive can be compared.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class Benchmark {
+
+   private static int MAX_MOVES = 10000;
+   private static String WON = "won";
+   private static String TIMEOUT = "timeout";
+
+   //How much each measurement may grow before it counts as a regression. Moves and nodes
+   //are the same on every run, while CPU time and heap vary from run to run and machine
+   //to machine, so they are given room to move.
+   private static double CPU_TOLERANCE = 0.25;
+   private static long CPU_SLACK_MILLIS = 200;
+   private static double HEAP_TOLERANCE = 0.25;
+   private static long HEAP_SLACK_KB = 16384;
+   private static double NODES_TOLERANCE = 0.05;
+
+   //CPU time spent in get_action by the game thread, for the game being played
+   private static long decisionNanos;
+
+   private static String STARTUP_MAP = "s0.in";
+
+   /**
+    * The measurements from playing one map.
+    */
+   private static class Result {
+      private String map;
+      private String outcome;
+      private int moves;
+      private long cpuMillis;
+      private long peakHeapKB;
+      private long nodes;
+
+      private Result(String map, String outcome, int moves, long cpuMillis, long peakHeapKB, long nodes) {
+         this.map = map;
+         this.outcome = outcome;
+         this.moves = moves;
+         this.cpuMillis = cpuMillis;
+         this.peakHeapKB = peakHeapKB;
+         this.nodes = nodes;
+      }
+      /**
+       * Reads a result written by toString.
+       * @param line is the line to read
+       * @return the result, or null if the line does not hold one
+       */
+      private static Result parse(String line) {
+         String[] fields = line.trim().split("\\s+");
+         if(fields.length != 6 || fields[0].startsWith("#")) {
+            return null;
+         }
+         try {
+            return new Result(fields[0], fields[1], Integer.parseInt(fields[2]), Long.parseLong(fields[3]),
+                  Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+         }
+         catch(NumberFormatException e) {
+            return null;
+         }
+      }
+      @Override
+      public String toString() {
+         return map + " " + outcome + " " + moves + " " + cpuMillis + " " + peakHeapKB + " " + nodes;
+      }
+   }
+
+   public static void main(String[] args) throws IOException, InterruptedException {
+      if(args.length == 2 && args[0].equals("-play")) {
+         System.out.println(play(args[1]));
+         System.exit(0);
+      }
+      if(args.length > 0 && args[0].equals("-startup")) {
+         startup(args);
+         return;
+      }
+      File dir = new File(".");
+      String baselineName = "perf-baseline.txt";
+      long timeoutSeconds = 60;
+      boolean update = false;
+      for(int k = 0; k < args.length; k++) {
+         if(args[k].equals("-d") && k + 1 < args.length) {
+            dir = new File(args[++k]);
+         }
+         else if(args[k].equals("-f") && k + 1 < args.length) {
+            baselineName = args[++k];
+         }
+         else if(args[k].equals("-t") && k + 1 < args.length) {
+            timeoutSeconds = Long.parseLong(args[++k]);
+         }
+         else if(args[k].equals("-u")) {
+            update = true;
+         }
+         else {
+            System.out.println("Usage: java Benchmark [-d dir] [-f baseline] [-t seconds] [-u]");
+            System.exit(2);
+         }
+      }
+      File baselineFile = new File(dir, baselineName);
+      List<Result> results = new ArrayList<Result>();
+      for(String map : maps(dir)) {
+         Result result = playInChild(dir, map, timeoutSeconds);
+         System.out.println(result);
+         results.add(result);
+      }
+      if(update) {
+         writeBaseline(baselineFile, results);
+         System.out.println("Wrote " + baselineFile);
+         return;
+      }
+      if(!baselineFile.exists()) {
+         System.out.println("No baseline at " + baselineFile + ", run with -u to make one");
+         System.exit(1);
+      }
+      Map<String, Result> baseline = readBaseline(baselineFile);
+      int regressions = 0;
+      for(Result result : results) {
+         Result base = baseline.get(result.map);
+         if(base == null) {
+            System.out.println(result.map + ": not in the baseline");
+            continue;
+         }
+         for(String problem : compare(base, result)) {
+            System.out.println(result.map + ": " + problem);
+            regressions++;
+         }
+      }
+      if(regressions > 0) {
+         System.out.println(regressions + " regression(s) against " + baselineFile);
+         System.exit(1);
+      }
+      System.out.println("No regressions against " + baselineFile);
+   }
+   /**
+    * Launches agents one after another and reports the median time each took to
+    * connect after launch and to answer the first view after it was sent.
+    * @param args are the command line arguments, starting with -startup
+    */
+   private static void startup(String[] args) throws IOException, InterruptedException {
+      int runs = 5;
+      List<String> jvmOptions = new ArrayList<String>();
+      List<String> agentOptions = new ArrayList<String>();
+      for(int k = 1; k < args.length; k++) {
+         if(args[k].equals("-n") && k + 1 < args.length) {
+            runs = Integer.parseInt(args[++k]);
+         }
+         else if(args[k].equals("-j") && k + 1 < args.length) {
+            jvmOptions.addAll(words(args[++k]));
+         }
+         else if(args[k].equals("-a") && k + 1 < args.length) {
+            agentOptions.addAll(words(args[++k]));
+         }
+         else {
+            System.out.println("Usage: java Benchmark -startup [-n runs] [-j \"jvm options\"] [-a \"agent options\"]");
+            System.exit(2);
+         }
+      }
+      byte[] view = Raft.first_view(STARTUP_MAP);
+      long[] connectMillis = new long[runs];
+      long[] firstActionMillis = new long[runs];
+      for(int run = 0; run < runs; run++) {
+         ServerSocket server = new ServerSocket(0);
+         List<String> command = new ArrayList<String>();
+         command.add(javaCommand());
+         command.addAll(jvmOptions);
+         command.add("-cp");
+         command.add(absoluteClassPath());
+         command.add("Agent");
+         command.add("-p");
+         command.add(Integer.toString(server.getLocalPort()));
+         command.addAll(agentOptions);
+         ProcessBuilder builder = new ProcessBuilder(command);
+         builder.redirectErrorStream(true);
+         builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+         long launched = System.nanoTime();
+         Process child = builder.start();
+         Socket socket;
+         try {
+            socket = server.accept();
+         }
+         finally {
+            server.close();
+         }
+         long connected = System.nanoTime();
+         socket.getOutputStream().write(view);
+         socket.getOutputStream().flush();
+         int action = socket.getInputStream().read();
+         long answered = System.nanoTime();
+         //The agent exits when the engine goes away
+         socket.close();
+         child.waitFor();
+         if(action == -1) {
+            System.out.println("The agent closed the connection without answering");
+            System.exit(1);
+         }
+         connectMillis[run] = (connected - launched) / 1000000;
+         firstActionMillis[run] = (answered - connected) / 1000000;
+         System.out.println("run " + (run + 1) + ": connected after " + connectMillis[run]
+               + "ms, first action " + firstActionMillis[run] + "ms later");
+      }
+      Arrays.sort(connectMillis);
+      Arrays.sort(firstActionMillis);
+      System.out.println("median: connected after " + connectMillis[runs / 2] + "ms, first action "
+            + firstActionMillis[runs / 2] + "ms later, " + (connectMillis[runs / 2] + firstActionMillis[runs / 2])
+            + "ms from launch");
+   }
+   private static List<String> words(String options) {
+      List<String> words = new ArrayList<String>();
+      for(String word : options.trim().split("\\s+")) {
+         if(word.length() > 0) {
+            words.add(word);
+         }
+      }
+      return words;
+   }
+   private static String javaCommand() {
+      return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+   }
+   /**
+    * Gives this JVM's class path with every entry made absolute, for children run from another directory.
+    * @return the class path
+    */
+   private static String absoluteClassPath() {
+      StringBuilder classPath = new StringBuilder();
+      for(String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+         if(classPath.length() > 0) {
+            classPath.append(File.pathSeparator);
+         }
+         classPath.append(new File(entry).getAbsolutePath());
+      }
+      return classPath.toString();
+   }
+   /**
+    * Lists the maps to play, the bundled ones first and then our own.
+    * @param dir is the directory holding the maps
+    * @return the map file names relative to dir
+    */
+   private static List<String> maps(File dir) {
+      List<String> maps = new ArrayList<String>();
+      addMaps(maps, dir, "");
+      addMaps(maps, new File(dir, "mytests"), "mytests/");
+      return maps;
+   }
+   private static void addMaps(List<String> maps, File dir, String prefix) {
+      String[] names = dir.list();
+      if(names == null) {
+         return;
+      }
+      Arrays.sort(names);
+      for(String name : names) {
+         if(name.startsWith("s") && name.endsWith(".in")) {
+            maps.add(prefix + name);
+         }
+      }
+   }
+   /**
+    * Plays a map in a new JVM running this class with -play, giving up after the time limit.
+    * @param dir is the directory holding the maps, which the game is run from
+    * @param map is the map to play
+    * @param timeoutSeconds is the longest the game may run
+    * @return the result the game printed
+    */
+   private static Result playInChild(File dir, String map, long timeoutSeconds)
+         throws IOException, InterruptedException {
+      //The game runs from the map directory, so the class path has to hold absolute paths
+      ProcessBuilder builder = new ProcessBuilder(javaCommand(), "-cp", absoluteClassPath(), "Benchmark", "-play", map);
+      builder.directory(dir);
+      builder.redirectErrorStream(true);
+      File output = File.createTempFile("benchmark", ".out");
+      builder.redirectOutput(output);
+      Process child = builder.start();
+      try {
+         if(!child.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+            child.destroyForcibly().waitFor();
+            return new Result(map, TIMEOUT, 0, 0, 0, 0);
+         }
+         Result result = null;
+         BufferedReader in = new BufferedReader(new FileReader(output));
+         try {
+            String line;
+            while((line = in.readLine()) != null) {
+               Result r = Result.parse(line);
+               if(r != null && r.map.equals(map)) {
+                  result = r;
+               }
+            }
+         }
+         finally {
+            in.close();
+         }
+         if(result == null) {
+            return new Result(map, "error", 0, 0, 0, 0);
+         }
+         return result;
+      }
+      finally {
+         output.delete();
+      }
+   }
+   /**
+    * Plays one game in this JVM and measures it.
+    * @param map is the map to play
+    * @return the measurements
+    */
+   private static Result play(String map) {
+      final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+      for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+         if(pool.getType() == MemoryType.HEAP) {
+            heapPools.add(pool);
+         }
+      }
+      System.gc();
+      for(MemoryPoolMXBean pool : heapPools) {
+         pool.resetPeakUsage();
+      }
+      long nodesBefore = SearchStats.nodesExpanded();
+      Agent agent = new Agent() {
+         @Override
+         public char get_action(char view[][]) {
+            long start = threads.getCurrentThreadCpuTime();
+            char action = super.get_action(view);
+            decisionNanos += threads.getCurrentThreadCpuTime() - start;
+            return action;
+         }
+      };
+      int moves = Raft.play(map, agent, MAX_MOVES);
+      String outcome = WON;
+      if(moves == Raft.LOST) {
+         outcome = "lost";
+         moves = 0;
+      }
+      else if(moves == 0) {
+         outcome = "exceeded";
+      }
+      long peakHeap = 0;
+      for(MemoryPoolMXBean pool : heapPools) {
+         peakHeap += pool.getPeakUsage().getUsed();
+      }
+      return new Result(map, outcome, moves, decisionNanos / 1000000, peakHeap / 1024,
+            SearchStats.nodesExpanded() - nodesBefore);
+   }
+   /**
+    * Compares a result with its baseline.
+    * @param base is the baseline result for the map
+    * @param result is the new result
+    * @return a description of each regression, empty if there are none
+    */
+   private static List<String> compare(Result base, Result result) {
+      List<String> problems = new ArrayList<String>();
+      if(!base.outcome.equals(WON)) {
+         //Only finishing can be compared against a game that did not finish
+         if(base.outcome.equals(TIMEOUT) || result.outcome.equals(TIMEOUT)) {
+            return problems;
+         }
+         if(!result.outcome.equals(base.outcome) && !result.outcome.equals(WON)) {
+            problems.add("now " + result.outcome + ", was " + base.outcome);
+         }
+         return problems;
+      }
+      if(!result.outcome.equals(WON)) {
+         problems.add("now " + result.outcome + ", was won");
+         return problems;
+      }
+      if(result.moves > base.moves) {
+         problems.add("moves " + result.moves + ", was " + base.moves);
+      }
+      if(result.cpuMillis > base.cpuMillis * (1 + CPU_TOLERANCE) + CPU_SLACK_MILLIS) {
+         problems.add("decision CPU " + result.cpuMillis + "ms, was " + base.cpuMillis + "ms");
+      }
+      if(result.peakHeapKB > base.peakHeapKB * (1 + HEAP_TOLERANCE) + HEAP_SLACK_KB) {
+         problems.add("peak heap " + result.peakHeapKB + "KB, was " + base.peakHeapKB + "KB");
+      }
+      if(result.nodes > base.nodes * (1 + NODES_TOLERANCE)) {
+         problems.add("nodes expanded " + result.nodes + ", was " + base.nodes);
+      }
+      return problems;
+   }
+   private static Map<String, Result> readBaseline(File file) throws IOException {
+      Map<String, Result> baseline = new HashMap<String, Result>();
+      BufferedReader in = new BufferedReader(new FileReader(file));
+      try {
+         String line;
+         while((line = in.readLine()) != null) {
+            Result result = Result.parse(line);
+            if(result != null) {
+               baseline.put(result.map, result);
+            }
+         }
+      }
+      finally {
+         in.close();
+      }
+      return baseline;
+   }
+   private static void writeBaseline(File file, List<Result> results) throws IOException {
+      PrintWriter out = new PrintWriter(new FileWriter(file));
+      try {
+         out.println("# Written by java Benchmark -u. CPU time and heap depend on the machine,");
+         out.println("# so remake this file when moving to a different one.");
+         out.println("# map outcome moves decision-cpu-ms peak-heap-kb nodes-expanded");
+         for(Result result : results) {
+            out.println(result);
+         }
+      }
+      finally {
+         out.close();
+      }
+   }
+}
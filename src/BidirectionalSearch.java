@@ -0,0 +1,302 @@
+import java.awt.Point;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An A* search grown from both ends at once, for long paths where a search
+ * from one end would spread over most of the map before reaching the other.
+ * It follows the same rules and costs as AStarSearch: a tile can only
+ * be stepped onto if the tools allow it, a path between two water tiles stays
+ * on water, and chopping a tree costs more than any path length so fewer trees
+ * always wins. So the paths it finds cost exactly as much as the ones A* finds,
+ * though where there are several such paths it may pick a different one.
+ *
+ * Both sides are guided by the same potential, half the difference between the
+ * lower bound on the cost to the goal and the lower bound on the cost from the
+ * start. Using one potential for both sides keeps their orderings consistent
+ * with each other, so the search can stop as soon as the cheapest entries left
+ * on the two queues together cost at least as much as the best path found
+ * through a tile both sides reached. The bounds are the Manhattan distance and,
+ * when given, the landmark bound, as for AStarSearch. Keys are kept doubled so
+ * the halves stay whole numbers.
+ *
+ * Entries of each queue are (key, tile) packed into a long so they sort by key.
+ * The grids are borrowed from the thread's pool for the search and given back
+ * once the path has been read off them.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class BidirectionalSearch {
+
+   //The decider only uses it when the JVM is started with -Draft.bidirectional=true or the agent with -x bidirectional
+   static final boolean ENABLED = Boolean.getBoolean("raft.bidirectional");
+
+   private static int UNREACHABLE = Integer.MAX_VALUE;
+
+   private Model model;
+   private Landmarks landmarks;
+   private boolean useLandmarks;
+   private Point startPoint;
+   private Point goalPoint;
+   private int start;
+   private int goal;
+   //Cost from the start to each tile, and from each tile to the goal
+   private IntGrid fromStart;
+   private IntGrid toGoal;
+   //The tile before each tile on the way from the start, and after it on the way to the goal
+   private IntGrid previous;
+   private IntGrid next;
+   private int meeting;
+   private int cost;
+   //The path found, from the tile after the start to the goal, or null if there is none
+   private int[] pathTiles;
+
+   private boolean haveAxe;
+   private boolean haveKey;
+   private boolean haveRaft;
+   private boolean waterOnly;
+
+   /**
+    * Creates a search between two tiles.
+    * @param model is the world model to search
+    * @param start is the tile to search from
+    * @param goal is the tile to search to
+    * @param landmarks are distances measured on the same world, or null to use only the Manhattan distance
+    */
+   public BidirectionalSearch(Model model, Point start, Point goal, Landmarks landmarks) {
+      this.model = model;
+      this.landmarks = landmarks;
+      this.startPoint = start;
+      this.goalPoint = goal;
+      this.start = Model.index(start.x, start.y);
+      this.goal = Model.index(goal.x, goal.y);
+      this.meeting = -1;
+      this.cost = UNREACHABLE;
+   }
+   /**
+    * Searches for the cheapest path. Must be called before any other method.
+    * @param haveAxe a boolean which reflects whether the AI has an axe
+    * @param haveKey a boolean which reflects whether the AI has a key
+    * @param haveRaft a boolean which reflects whether the AI has a raft
+    * @throws CancellationException if the thread is interrupted while searching
+    */
+   public void search(boolean haveAxe, boolean haveKey, boolean haveRaft) {
+      this.haveAxe = haveAxe;
+      this.haveKey = haveKey;
+      this.haveRaft = haveRaft;
+      this.waterOnly = tile(start) == Model.WATER && tile(goal) == Model.WATER;
+      this.useLandmarks = (landmarks != null) && landmarks.covers(haveAxe, haveKey, haveRaft);
+      if(start == goal || !canEnter(goal)) {
+         return;
+      }
+      if(useLandmarks && landmarks.separates(startPoint.x, startPoint.y, goalPoint.x, goalPoint.y)) {
+         return;
+      }
+      fromStart = IntGrid.borrow(UNREACHABLE);
+      toGoal = IntGrid.borrow(UNREACHABLE);
+      previous = IntGrid.borrow(-1);
+      next = IntGrid.borrow(-1);
+      PriorityQueue<Long> forward = new PriorityQueue<Long>();
+      PriorityQueue<Long> backward = new PriorityQueue<Long>();
+      fromStart.set(start, 0);
+      toGoal.set(goal, 0);
+      forward.add(pack(potential(start), start));
+      backward.add(pack(-potential(goal), goal));
+      int expanded = 0;
+      while(!forward.isEmpty() && !backward.isEmpty()) {
+         if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+         }
+         long top = (forward.peek() >>> 16) + (backward.peek() >>> 16);
+         if(cost != UNREACHABLE && top >= 2L * cost) {
+            break;
+         }
+         //Grow whichever side has the fewer tiles waiting, which keeps the two sides balanced
+         if(forward.size() <= backward.size()) {
+            expanded += expandForward(forward);
+         }
+         else {
+            expanded += expandBackward(backward);
+         }
+      }
+      SearchStats.addExpanded(expanded);
+      keepPath();
+      IntGrid.giveBack(fromStart);
+      IntGrid.giveBack(toGoal);
+      IntGrid.giveBack(previous);
+      IntGrid.giveBack(next);
+      fromStart = toGoal = previous = next = null;
+   }
+   /**
+    * Reads the path through the meeting tile off the grids before they are given back.
+    */
+   private void keepPath() {
+      if(meeting == -1) {
+         return;
+      }
+      PathBuffer path = new PathBuffer();
+      for(int tile = meeting; tile != start; tile = previous.get(tile)) {
+         path.add(tile);
+      }
+      path.reverseFrom(0);
+      for(int tile = next.get(meeting); tile != -1; tile = next.get(tile)) {
+         path.add(tile);
+      }
+      pathTiles = new int[path.size()];
+      for(int i = 0; i < pathTiles.length; i++) {
+         pathTiles[i] = path.tile(i);
+      }
+   }
+   /**
+    * Takes the cheapest tile off the forward queue and steps from it onto its neighbours.
+    * @return 1 if a tile was expanded, 0 if the entry was out of date
+    */
+   private int expandForward(PriorityQueue<Long> forward) {
+      long entry = forward.poll();
+      int curr = (int)(entry & 0xffff);
+      int currCost = fromStart.get(curr);
+      if((entry >>> 16) != 2L * currCost + potential(curr)) {
+         return 0;
+      }
+      int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+      int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+      for(int i = 0; i < 4; i++) {
+         int nextX = x + Movement.DX[i];
+         int nextY = y + Movement.DY[i];
+         if(!Model.inBounds(nextX, nextY)) {
+            continue;
+         }
+         int tile = Model.index(nextX, nextY);
+         if(!canEnter(tile)) {
+            continue;
+         }
+         int nextCost = currCost + stepCost(tile);
+         if(nextCost >= fromStart.get(tile)) {
+            continue;
+         }
+         fromStart.set(tile, nextCost);
+         previous.set(tile, curr);
+         forward.add(pack(2 * nextCost + potential(tile), tile));
+         meet(tile);
+      }
+      return 1;
+   }
+   /**
+    * Takes the cheapest tile off the backward queue and steps back from it onto
+    * the neighbours a path could have come from.
+    * @return 1 if a tile was expanded, 0 if the entry was out of date
+    */
+   private int expandBackward(PriorityQueue<Long> backward) {
+      long entry = backward.poll();
+      int curr = (int)(entry & 0xffff);
+      int currCost = toGoal.get(curr);
+      if((entry >>> 16) != 2L * currCost - potential(curr) || curr == start) {
+         return 0;
+      }
+      //Coming onto this tile from a neighbour costs the same whichever neighbour it is
+      int nextCost = currCost + stepCost(curr);
+      int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+      int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+      for(int i = 0; i < 4; i++) {
+         int prevX = x + Movement.DX[i];
+         int prevY = y + Movement.DY[i];
+         if(!Model.inBounds(prevX, prevY)) {
+            continue;
+         }
+         int tile = Model.index(prevX, prevY);
+         //Any tile but the start is stepped onto on the way to this one
+         if(tile != start && !canEnter(tile)) {
+            continue;
+         }
+         if(nextCost >= toGoal.get(tile)) {
+            continue;
+         }
+         toGoal.set(tile, nextCost);
+         next.set(tile, curr);
+         backward.add(pack(2 * nextCost - potential(tile), tile));
+         meet(tile);
+      }
+      return 1;
+   }
+   /**
+    * Records a path through the tile if both sides have reached it and it beats the best so far.
+    * @param tile is a tile whose cost from one side has just gone down
+    */
+   private void meet(int tile) {
+      if(fromStart.get(tile) == UNREACHABLE || toGoal.get(tile) == UNREACHABLE) {
+         return;
+      }
+      int through = fromStart.get(tile) + toGoal.get(tile);
+      if(through < cost) {
+         cost = through;
+         meeting = tile;
+      }
+   }
+   /**
+    * Gives twice the potential of a tile: the bound on the cost to the goal less
+    * the bound on the cost from the start. The forward key of a tile is twice its
+    * cost from the start plus this, and the backward key twice its cost to the
+    * goal less this, neither of which can be negative.
+    * @param tile is the index of the tile
+    * @return twice the potential
+    */
+   private int potential(int tile) {
+      int x = tile % Model.WIDTH - Model.MAXIMUM_X;
+      int y = tile / Model.WIDTH - Model.MAXIMUM_Y;
+      int toGoalBound = Math.abs(x - goalPoint.x) + Math.abs(y - goalPoint.y);
+      int fromStartBound = Math.abs(x - startPoint.x) + Math.abs(y - startPoint.y);
+      if(useLandmarks) {
+         toGoalBound = Math.max(toGoalBound, landmarks.lowerBound(x, y, goalPoint.x, goalPoint.y));
+         fromStartBound = Math.max(fromStartBound, landmarks.lowerBound(startPoint.x, startPoint.y, x, y));
+      }
+      return toGoalBound - fromStartBound;
+   }
+   /**
+    * Whether a tile can be stepped onto under the rules of this search.
+    * @param tile is the index of the tile
+    * @return whether the tile can be stepped onto
+    */
+   private boolean canEnter(int tile) {
+      char c = tile(tile);
+      if(waterOnly && c != Model.WATER) {
+         return false;
+      }
+      return Model.canPotentiallyMoveOntoTile(c, haveAxe, haveKey, haveRaft);
+   }
+   private int stepCost(int tile) {
+      return (tile(tile) == Model.TREE) ? 1 + AStarSearch.TREE_COST : 1;
+   }
+   private char tile(int tile) {
+      return model.tileAt(tile % Model.WIDTH - Model.MAXIMUM_X, tile / Model.WIDTH - Model.MAXIMUM_Y);
+   }
+   private static long pack(int key, int tile) {
+      return ((long)key << 16) | tile;
+   }
+   /**
+    * A reachability tester for whether it is possible to go from start to goal.
+    * @return a boolean stating whether it is possible to travel from start to goal.
+    */
+   public boolean reachable() {
+      return meeting != -1;
+   }
+   /**
+    * Gives the cost of the path found, counting TREE_COST extra for each tree chopped.
+    * @return the cost, or Integer.MAX_VALUE if there is no path
+    */
+   public int pathCost() {
+      return cost;
+   }
+   /**
+    * Called to get the path from start to goal, in correct order.
+    * Adds nothing if there is no path.
+    * @param path is the buffer to add the path to, not including the start
+    */
+   public void reconstructPath(PathBuffer path) {
+      if(pathTiles == null) {
+         return;
+      }
+      for(int tile : pathTiles) {
+         path.add(tile);
+      }
+   }
+}
@@ -0,0 +1,238 @@
+import java.awt.Point;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class holds a search where walls, trees and doors can be walked through
+ * at the cost of one dynamite each. Trees are free if we have an axe and doors
+ * are free if we have a key. The search is a Dijkstra search over the whole
+ * grid from a single source, minimising the number of dynamites used first and
+ * the number of steps second. Searches that would need more dynamites than the
+ * agent holds are pruned.
+ * 
+ * To plan a trip to the treasure and back, three searches are run: from the
+ * agent, from the treasure and from the start. The three paths meet at some
+ * tile, and the tile where the combined dynamite cost is smallest gives the
+ * cheapest route to the treasure and home again, since anything blown up on
+ * the way out stays open for the way back.
+ * 
+ * The grids of a search are borrowed from the thread's pool, so whoever runs a
+ * search releases it once done with it.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class BlastSearch {
+   
+   private static int UNREACHABLE = Integer.MAX_VALUE;
+   
+   private Model model;
+   private boolean haveAxe;
+   private boolean haveKey;
+   private Point source;
+   private IntGrid dynamitesUsed;
+   private IntGrid steps;
+   private IntGrid cameFrom;
+   
+   /**
+    * Runs the search from the given source.
+    * @param model is the world model to search over
+    * @param source is where the search starts
+    * @param haveAxe whether trees can be chopped instead of blown up
+    * @param haveKey whether doors can be unlocked instead of blown up
+    * @param haveRaft whether water can be traveled on
+    * @param maxDynamites the most dynamites any path may use
+    * @throws CancellationException if the thread is interrupted while searching
+    */
+   public BlastSearch(Model model, Point source, boolean haveAxe, boolean haveKey, boolean haveRaft, int maxDynamites) {
+      this.model = model;
+      this.haveAxe = haveAxe;
+      this.haveKey = haveKey;
+      this.source = source;
+      this.dynamitesUsed = IntGrid.borrow(UNREACHABLE);
+      this.steps = IntGrid.borrow(UNREACHABLE);
+      this.cameFrom = IntGrid.borrow(-1);
+      if(!Model.inBounds((int)source.getX(), (int)source.getY())) {
+         return;
+      }
+      //Entries are (dynamites, steps, tile) packed into a long so they sort lexicographically
+      PriorityQueue<Long> pq = new PriorityQueue<Long>();
+      int start = Model.index((int)source.getX(), (int)source.getY());
+      dynamitesUsed.set(start, 0);
+      steps.set(start, 0);
+      pq.add(pack(0, 0, start));
+      int expanded = 0;
+      while(!pq.isEmpty()) {
+         if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+         }
+         long entry = pq.poll();
+         int curr = (int)(entry & 0xffff);
+         int currDynamites = (int)(entry >>> 48);
+         int currSteps = (int)((entry >>> 16) & 0xffffffffL);
+         if(currDynamites != dynamitesUsed.get(curr) || currSteps != steps.get(curr)) {
+            continue;
+         }
+         expanded++;
+         int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+         int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+         for(int i = 0; i < 4; i++) {
+            int nextX = x + Movement.DX[i];
+            int nextY = y + Movement.DY[i];
+            if(!Model.inBounds(nextX, nextY)) {
+               continue;
+            }
+            char tile = model.tileAt(nextX, nextY);
+            int cost;
+            if(Model.canPotentiallyMoveOntoTile(tile, haveAxe, haveKey, haveRaft)) {
+               cost = 0;
+            }
+            else if(Model.canBeBlownUp(tile)) {
+               cost = 1;
+            }
+            else {
+               continue;
+            }
+            int nextDynamites = currDynamites + cost;
+            if(nextDynamites > maxDynamites) {
+               continue;
+            }
+            int next = Model.index(nextX, nextY);
+            int nextSteps = currSteps + 1;
+            if(nextDynamites > dynamitesUsed.get(next) ||
+                  (nextDynamites == dynamitesUsed.get(next) && nextSteps >= steps.get(next))) {
+               continue;
+            }
+            dynamitesUsed.set(next, nextDynamites);
+            steps.set(next, nextSteps);
+            cameFrom.set(next, curr);
+            pq.add(pack(nextDynamites, nextSteps, next));
+         }
+      }
+      SearchStats.addExpanded(expanded);
+   }
+   /**
+    * Gives the grids back to the pool. The search must not be used after this.
+    */
+   public void release() {
+      if(cameFrom != null) {
+         IntGrid.giveBack(dynamitesUsed);
+         IntGrid.giveBack(steps);
+         IntGrid.giveBack(cameFrom);
+         dynamitesUsed = steps = cameFrom = null;
+      }
+   }
+   /**
+    * Gives the number of dynamites needed to get from the source to the given point.
+    * @param p is the point to travel to
+    * @return the dynamites needed, or UNREACHABLE if there is no path within the limit
+    */
+   public int dynamitesTo(Point p) {
+      if(!Model.inBounds((int)p.getX(), (int)p.getY())) {
+         return UNREACHABLE;
+      }
+      return dynamitesUsed.get(Model.index((int)p.getX(), (int)p.getY()));
+   }
+   /**
+    * Gives the number of steps on the cheapest path from the source to the given point.
+    * @param p is the point to travel to
+    * @return the steps needed, or UNREACHABLE if there is no path within the limit
+    */
+   public int stepsTo(Point p) {
+      if(!Model.inBounds((int)p.getX(), (int)p.getY())) {
+         return UNREACHABLE;
+      }
+      return steps.get(Model.index((int)p.getX(), (int)p.getY()));
+   }
+   /**
+    * Gives the cheapest path from the source to the given point.
+    * Adds nothing if the point is unreachable.
+    * @param p is the point to travel to
+    * @param path is the buffer to add the path to, not including the source
+    */
+   public void pathTo(Point p, PathBuffer path) {
+      if(dynamitesTo(p) == UNREACHABLE) {
+         return;
+      }
+      int first = path.size();
+      int curr = Model.index((int)p.getX(), (int)p.getY());
+      while(cameFrom.get(curr) != -1) {
+         path.add(curr);
+         curr = cameFrom.get(curr);
+      }
+      path.reverseFrom(first);
+   }
+   /**
+    * Finds the path to the goal on the cheapest round trip from the agent to the goal
+    * and then to home, using no more dynamites than the agent holds.
+    * @param model is the current world model
+    * @param goal is the point to visit, such as the treasure
+    * @param home is where the trip ends
+    * @param path is the buffer to add the path from the agent to the goal to
+    * @return whether a trip is possible
+    */
+   public static boolean roundTrip(Model model, Point goal, Point home, PathBuffer path) {
+      int max = model.numDynamites();
+      BlastSearch fromAgent = new BlastSearch(model, model.getLoc(), model.haveAxe(), model.haveKey(), model.haveRaft(), max);
+      if(fromAgent.dynamitesTo(goal) == UNREACHABLE) {
+         fromAgent.release();
+         return false;
+      }
+      BlastSearch fromGoal = new BlastSearch(model, goal, model.haveAxe(), model.haveKey(), model.haveRaft(), max);
+      BlastSearch fromHome = new BlastSearch(model, home, model.haveAxe(), model.haveKey(), model.haveRaft(), max);
+      Point best = null;
+      long bestCost = Long.MAX_VALUE;
+      for(int x = -Model.MAXIMUM_X; x <= Model.MAXIMUM_X; x++) {
+         for(int y = -Model.MAXIMUM_Y; y <= Model.MAXIMUM_Y; y++) {
+            Point meet = new Point(x, y);
+            if(fromAgent.dynamitesTo(meet) == UNREACHABLE || fromGoal.dynamitesTo(meet) == UNREACHABLE
+                  || fromHome.dynamitesTo(meet) == UNREACHABLE) {
+               continue;
+            }
+            //Each search paid to enter the meeting tile, but it only needs blowing up once
+            int dynamites = fromAgent.dynamitesTo(meet) + fromGoal.dynamitesTo(meet) + fromHome.dynamitesTo(meet);
+            dynamites -= 2 * fromAgent.blastCost(meet);
+            if(dynamites > max) {
+               continue;
+            }
+            //The stretch between the meeting tile and the goal is walked twice
+            long cost = (long)dynamites * Model.WIDTH * Model.HEIGHT * 4
+                  + fromAgent.stepsTo(meet) + 2 * fromGoal.stepsTo(meet) + fromHome.stepsTo(meet);
+            if(cost < bestCost) {
+               bestCost = cost;
+               best = meet;
+            }
+         }
+      }
+      if(best != null) {
+         fromAgent.pathTo(best, path);
+         //The goal search came from the goal, so follow it back from the meeting tile to the goal
+         int curr = Model.index(best.x, best.y);
+         while(fromGoal.cameFrom.get(curr) != -1) {
+            curr = fromGoal.cameFrom.get(curr);
+            path.add(curr);
+         }
+      }
+      fromAgent.release();
+      fromGoal.release();
+      fromHome.release();
+      return best != null;
+   }
+   /**
+    * Gives the dynamites needed to step onto a tile that is not the source.
+    * @param p is the tile to step onto
+    * @return 1 if the tile has to be blown up, otherwise 0
+    */
+   private int blastCost(Point p) {
+      if(p.equals(source)) {
+         return 0;
+      }
+      char tile = model.tileAt(p.x, p.y);
+      if(Model.canBeBlownUp(tile) && !Model.canPotentiallyMoveOntoTile(tile, haveAxe, haveKey, false)) {
+         return 1;
+      }
+      return 0;
+   }
+   private static long pack(int dynamites, int steps, int tile) {
+      return ((long)dynamites << 48) | ((long)steps << 16) | tile;
+   }
+}
@@ -0,0 +1,235 @@
+import java.awt.Point;
+import java.util.*;
+
+/**
+ * The dead ends of the known map: open tiles that can only be left the way they
+ * were entered. They are found by peeling off every open tile with at most one
+ * open neighbour, again and again, until every tile left has two or more. What
+ * is peeled off hangs from the rest of the map by a single tile, so a path
+ * between two tiles outside a dead end never goes into it, and A* can skip it.
+ *
+ * The dead ends are kept up to date as tiles change, with only the tiles near
+ * the change looked at again. A tile closing can only make more dead ends, so
+ * they are peeled off from its neighbours. A tile opening can only join the
+ * dead ends it touches back to the rest of the map, so only those are peeled
+ * again. Only a change of tools makes the next query look at the whole map.
+ * Nothing is kept up to date until the first query, so when A* is not asked to
+ * skip dead ends they cost nothing. A* skips them only when the JVM is started
+ * with -Draft.deadends=true or the agent with -x deadends.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class DeadEnds {
+
+   static final boolean ENABLED = Boolean.getBoolean("raft.deadends");
+
+   private Model model;
+   //Open tiles in a dead end, by index
+   private BitSet dead;
+   //Tiles whose neighbours need checking
+   private IntGrid queue;
+   //The tools the dead ends were found with, and whether they are still right for them
+   private boolean haveAxe;
+   private boolean haveKey;
+   private boolean haveRaft;
+   private boolean valid;
+
+   public DeadEnds(Model model) {
+      this.model = model;
+      this.dead = new BitSet(Model.WIDTH * Model.HEIGHT);
+      this.queue = IntGrid.allocate(Model.WIDTH * Model.HEIGHT, 0);
+      this.valid = false;
+   }
+   /**
+    * Called by the model whenever a tile changes, to keep the dead ends around it right.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @param oldTile is what the tile held
+    * @param newTile is what the tile now holds
+    */
+   void tileChanged(int x, int y, char oldTile, char newTile) {
+      if(!valid) {
+         return;
+      }
+      boolean wasOpen = Model.canPotentiallyMoveOntoTile(oldTile, haveAxe, haveKey, haveRaft);
+      boolean isOpen = Model.canPotentiallyMoveOntoTile(newTile, haveAxe, haveKey, haveRaft);
+      if(wasOpen == isOpen) {
+         return;
+      }
+      int tile = Model.index(x, y);
+      if(wasOpen) {
+         //A dead end tile was never counted by its neighbours, so losing it changes nothing else
+         if(dead.get(tile)) {
+            dead.clear(tile);
+            return;
+         }
+         int tail = 0;
+         for(int i = 0; i < 4; i++) {
+            tail = peel(x + Movement.DX[i], y + Movement.DY[i], tail);
+         }
+         peelFrom(tail);
+         return;
+      }
+      //Gather the tile and the dead ends it touches, then peel them again as if they were all new
+      int head = 0;
+      int tail = 0;
+      queue.set(tail++, tile);
+      while(head < tail) {
+         int curr = queue.get(head++);
+         int currX = curr % Model.WIDTH - Model.MAXIMUM_X;
+         int currY = curr / Model.WIDTH - Model.MAXIMUM_Y;
+         for(int i = 0; i < 4; i++) {
+            int nextX = currX + Movement.DX[i];
+            int nextY = currY + Movement.DY[i];
+            if(Model.inBounds(nextX, nextY) && dead.get(Model.index(nextX, nextY))) {
+               dead.clear(Model.index(nextX, nextY));
+               queue.set(tail++, Model.index(nextX, nextY));
+            }
+         }
+      }
+      SearchStats.addExpanded(head);
+      int gathered = tail;
+      tail = 0;
+      for(int i = 0; i < gathered; i++) {
+         //Peeled tiles are queued over gathered ones already looked at
+         int curr = queue.get(i);
+         tail = peel(curr % Model.WIDTH - Model.MAXIMUM_X, curr / Model.WIDTH - Model.MAXIMUM_Y, tail);
+      }
+      peelFrom(tail);
+   }
+   /**
+    * Whether the dead ends hold for a search made with the given tools. Holding
+    * fewer tools only closes tiles, which can't give a dead end a second way out.
+    * @param haveAxe is whether the search may walk through trees
+    * @param haveKey is whether the search may walk through doors
+    * @param haveRaft is whether the search may walk on water
+    * @return whether the search may skip the dead ends
+    */
+   public boolean covers(boolean haveAxe, boolean haveKey, boolean haveRaft) {
+      refresh();
+      return (this.haveAxe || !haveAxe) && (this.haveKey || !haveKey) && (this.haveRaft || !haveRaft);
+   }
+   /**
+    * Whether a tile is in a dead end.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return whether the tile is open and in a dead end
+    */
+   public boolean isDeadEnd(int x, int y) {
+      refresh();
+      return Model.inBounds(x, y) && dead.get(Model.index(x, y));
+   }
+   /**
+    * Gives the dead end tiles a search between two tiles may still need: those in
+    * the dead end holding the goal, and those in the dead ends holding or next to
+    * the start, as the start itself may be a tile that can't be walked on.
+    * @param start is the tile the search starts from
+    * @param goal is the tile the search ends at
+    * @return the dead end tiles that must not be skipped, by index
+    */
+   public BitSet pocketsOf(Point start, Point goal) {
+      refresh();
+      BitSet pockets = new BitSet(Model.WIDTH * Model.HEIGHT);
+      int tail = 0;
+      tail = gather(start.x, start.y, pockets, tail);
+      for(int i = 0; i < 4; i++) {
+         tail = gather(start.x + Movement.DX[i], start.y + Movement.DY[i], pockets, tail);
+      }
+      tail = gather(goal.x, goal.y, pockets, tail);
+      int head = 0;
+      while(head < tail) {
+         int curr = queue.get(head++);
+         int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+         int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+         for(int i = 0; i < 4; i++) {
+            tail = gather(x + Movement.DX[i], y + Movement.DY[i], pockets, tail);
+         }
+      }
+      SearchStats.addExpanded(head);
+      return pockets;
+   }
+   /**
+    * Adds a tile to the pockets being gathered if it is a dead end not yet gathered.
+    * @return the new end of the queue
+    */
+   private int gather(int x, int y, BitSet pockets, int tail) {
+      if(!Model.inBounds(x, y)) {
+         return tail;
+      }
+      int tile = Model.index(x, y);
+      if(!dead.get(tile) || pockets.get(tile)) {
+         return tail;
+      }
+      pockets.set(tile);
+      queue.set(tail, tile);
+      return tail + 1;
+   }
+   /**
+    * Finds every dead end again if the tools have changed.
+    */
+   private void refresh() {
+      if(valid && haveAxe == model.haveAxe() && haveKey == model.haveKey() && haveRaft == model.haveRaft()) {
+         return;
+      }
+      haveAxe = model.haveAxe();
+      haveKey = model.haveKey();
+      haveRaft = model.haveRaft();
+      dead.clear();
+      int tail = 0;
+      for(int x = -Model.MAXIMUM_X; x <= Model.MAXIMUM_X; x++) {
+         for(int y = -Model.MAXIMUM_Y; y <= Model.MAXIMUM_Y; y++) {
+            tail = peel(x, y, tail);
+         }
+      }
+      peelFrom(tail);
+      valid = true;
+   }
+   /**
+    * Peels off the neighbours of each queued tile that it leaves with at most one
+    * way out, and on from those, until no more can be peeled.
+    * @param tail is the number of tiles already peeled and queued
+    */
+   private void peelFrom(int tail) {
+      int head = 0;
+      while(head < tail) {
+         int curr = queue.get(head++);
+         int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+         int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+         for(int i = 0; i < 4; i++) {
+            tail = peel(x + Movement.DX[i], y + Movement.DY[i], tail);
+         }
+      }
+      SearchStats.addExpanded(head);
+   }
+   /**
+    * Peels off a tile and queues it if it is open, not yet peeled, and has at most one open neighbour left.
+    * @return the new end of the queue
+    */
+   private int peel(int x, int y, int tail) {
+      if(!isLive(x, y) || liveNeighbours(x, y) > 1) {
+         return tail;
+      }
+      int tile = Model.index(x, y);
+      dead.set(tile);
+      queue.set(tail, tile);
+      return tail + 1;
+   }
+   private int liveNeighbours(int x, int y) {
+      int live = 0;
+      for(int i = 0; i < 4; i++) {
+         if(isLive(x + Movement.DX[i], y + Movement.DY[i])) {
+            live++;
+         }
+      }
+      return live;
+   }
+   /**
+    * Whether a tile is open and not yet peeled off.
+    */
+   private boolean isLive(int x, int y) {
+      if(!Model.inBounds(x, y) || dead.get(Model.index(x, y))) {
+         return false;
+      }
+      return Model.canPotentiallyMoveOntoTile(model.tileAt(x, y), haveAxe, haveKey, haveRaft);
+   }
+}
@@ -1,5 +1,6 @@
 import java.awt.Point;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * The decider class decides the agent's next action through the greedy method
@@ -11,12 +12,12 @@ import java.util.*;
  * 5. Pick up any important items if they are in sight and reach
  * 6. Explore as much of the land as possible
  * 7. Go to the waters if the agent has a raft
- * 8. Use dynamite to clear walls for important items/pathways
+ * 8. Use dynamite to blow a path to the treasure, keeping enough to get home
  * 
  * The locations of these important items are kept in the Model.java using Point
  * data structures. These are used in the CreatePathTo function which utilises
  * A* Search to find the shortest path from the start to the goal. It then goes
- * through that path and adds actions to the Queue, moveQueue. A* Search was 
+ * through that path and adds actions to the ActionBuffer, moveQueue. A* Search was 
  * chosen as it was a fast and less memory intensive search algorithm, utilising
  * the Manhattan heuristic as the game is a grid based game. 
  * 
@@ -24,13 +25,157 @@ import java.util.*;
  */
 
 public class Decider {
-   private Queue<Character> moveQueue;
+   //Time the tour planner may spend ordering the tools each decision
+   private static long TOUR_BUDGET_NANOS = 20000000L;
+   //Time the round trip search may spend proving we can get home with the treasure
+   private static long ROUND_TRIP_BUDGET_NANOS = 50000000L;
+   //Paths at least this many steps long by Manhattan distance are searched from both ends when enabled
+   private static int BIDIRECTIONAL_MIN_DISTANCE = 25;
+   //How many times we may plan from the same state before giving up on it, and how many states to remember
+   private static int REPEAT_LIMIT = 3;
+   private static int HISTORY_SIZE = 1 << 12;
+   
+   private ActionBuffer moveQueue;
+   //Reused by every plan for the path being queued and the action clearing each of its tiles
+   private PathBuffer path;
+   private ActionBuffer clears;
    private Model model;
+   private TourPlanner tourPlanner;
+   //How often we have planned from each recent state, to stop going round in circles
+   private StateHistory history;
 
    
+   //Anytime mode: how long each decision may take, or 0 to always wait for the full plan
+   private long timeBudgetNanos;
+   private ExecutorService planner;
+   //The plan being worked on in the background, and the direction it was started facing
+   private Future<?> pendingPlan;
+   private int plannedDirection;
+   //Turns handed out while the background plan was not ready, to be applied to the model after
+   private ActionBuffer turnsWhilePlanning;
+   //The goals as the background plan started with them, to put back if the plan is dropped
+   private Model.Goals plannedGoals;
+   //The moves to the nearest tile not yet visited, which the background plan works out before
+   //going down the list, for a decision that runs out of time to take instead of waiting
+   private volatile char[] quickPlan;
+   //A plan started on the model as it will be after the last move, before its view arrived
+   private Future<?> speculation;
+   private Model.Goals speculatedGoals;
+   //Whether to explore by scoring every frontier tile rather than taking the first reachable one
+   private boolean scoreFrontier;
+   //How long to weigh a plan that can't be taken back against other plans, or 0 to always take it
+   private long rolloutBudgetNanos;
+   private RolloutPlanner rollouts;
+   //How long other strategies may race the priority list on copies of the model, or 0 to only use the list
+   private long portfolioBudgetNanos;
+   private StrategyPortfolio portfolio;
+   
    public Decider() {
-      this.moveQueue = new LinkedList<Character>();
-      this.model = new Model();
+      this(0);
+   }
+   /**
+    * Creates a decider that answers every decision within the given time.
+    * Plans are made in a background thread, which first works out the way to the
+    * nearest tile not yet visited and then goes down the priority list. If the list
+    * takes longer than the time given, the decision takes the quick plan and the
+    * list's plan is dropped, since it was made for where we stood before. Until the
+    * quick plan is ready the agent turns on the spot instead, which changes nothing
+    * on the map, so the list's plan is still good when it is ready.
+    * @param timeBudgetNanos is how long each decision may take, or 0 for no limit
+    */
+   public Decider(long timeBudgetNanos) {
+      this(new Model(), timeBudgetNanos);
+   }
+   /**
+    * Creates a decider that plans on a copy of another decider's model, as the
+    * strategy portfolio does. It never plans in the background.
+    * @param model is the copy to plan on
+    * @param scoreFrontier is whether to explore by scoring every frontier tile
+    */
+   Decider(Model model, boolean scoreFrontier) {
+      this(model, 0);
+      this.scoreFrontier = scoreFrontier;
+   }
+   private Decider(Model model, long timeBudgetNanos) {
+      this.moveQueue = new ActionBuffer();
+      this.path = new PathBuffer();
+      this.clears = new ActionBuffer();
+      this.model = model;
+      this.tourPlanner = new TourPlanner();
+      this.history = new StateHistory(HISTORY_SIZE);
+      this.timeBudgetNanos = timeBudgetNanos;
+      this.turnsWhilePlanning = new ActionBuffer();
+   }
+   public void setFrontierScoring(boolean scoreFrontier) {
+      this.scoreFrontier = scoreFrontier;
+   }
+   /**
+    * Turns on trying out plans that land the raft or use a dynamite on made up
+    * completions of the map before committing to them.
+    * @param rolloutBudgetNanos is how long to spend on each such plan, or 0 to never try them out
+    */
+   public void setRolloutBudget(long rolloutBudgetNanos) {
+      this.rolloutBudgetNanos = rolloutBudgetNanos;
+      if(rolloutBudgetNanos > 0 && rollouts == null) {
+         rollouts = new RolloutPlanner();
+      }
+   }
+   /**
+    * Turns on racing other strategies against the priority list for every plan.
+    * @param portfolioBudgetNanos is how long the other strategies may take, or 0 to only use the list
+    */
+   public void setPortfolioBudget(long portfolioBudgetNanos) {
+      this.portfolioBudgetNanos = portfolioBudgetNanos;
+      if(portfolioBudgetNanos > 0 && portfolio == null) {
+         portfolio = new StrategyPortfolio();
+      }
+   }
+   /**
+    * Stops the background planning thread once the game is over, so that a process
+    * playing many games doesn't keep one idle thread for each.
+    */
+   public void shutdown() {
+      if(planner != null) {
+         planner.shutdownNow();
+      }
+      if(rollouts != null) {
+         rollouts.shutdown();
+      }
+      if(portfolio != null) {
+         portfolio.shutdown();
+      }
+   }
+   /**
+    * Gives the background planning thread, starting it the first time it is needed.
+    * @return the executor that runs background plans
+    */
+   private ExecutorService planner() {
+      if(planner == null) {
+         planner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread t = new Thread(r, "decider-planner");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      return planner;
+   }
+   /**
+    * Called once the move has been sent, while waiting for the next view. If the
+    * next decision will need a new plan, starts making it now on the model as it
+    * stands after the move. A view only adds the tiles at the edge of sight, so if
+    * it turns out to show nothing new the plan is used as is, otherwise it is thrown away.
+    */
+   public void plan_ahead() {
+      if(!moveQueue.isEmpty() || pendingPlan != null || speculation != null) {
+         return;
+      }
+      speculatedGoals = model.saveGoals();
+      //Anything this does, updating with the real view would have done as well
+      model.update(model.predictView());
+      speculation = startPlan();
    }
  /**
   * make_decision firstly updates the world model, and then makes decisions
@@ -40,22 +185,262 @@ public class Decider {
   * @return the move to be made
   */
    public char make_decision( char view[][] ) {
-      this.model.update(view);
-      char move = 'r';
-      
+      long allocationMark = AllocationProfile.start();
+      char move = decide(view);
+      AllocationProfile.end(AllocationProfile.DECISION, allocationMark);
+      return move;
+   }
+   /**
+    * Makes the decision for make_decision.
+    * @param view is the given 5x5 grid from the limited view
+    * @return the move to be made
+    */
+   private char decide(char view[][]) {
+      long deadline = System.nanoTime() + timeBudgetNanos;
+      if(speculation != null) {
+         if(model.viewMatchesWorld(view)) {
+            //The plan was made on exactly this world, so carry on with it as if it were our own
+            pendingPlan = speculation;
+            speculation = null;
+         }
+         else {
+            //The plan is no good, so stop it rather than let it finish, then undo what it did
+            stopPlan(speculation);
+            speculation = null;
+            moveQueue.clear();
+            model.restoreGoals(speculatedGoals);
+         }
+      }
+      //While a plan is pending we have only turned, so the view holds nothing new
+      if(pendingPlan == null) {
+         this.model.update(view);
+         if(!moveQueue.isEmpty()) {
+            return nextMove();
+         }
+         if(timeBudgetNanos == 0) {
+            plan();
+            return nextMove();
+         }
+         pendingPlan = startPlan();
+      }
+      long remaining = (timeBudgetNanos == 0) ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+      if(!waitFor(pendingPlan, remaining)) {
+         char[] quick = quickPlan;
+         if(quick == null || quick.length == 0) {
+            turnsWhilePlanning.add(Model.TURN_RIGHT);
+            return Model.TURN_RIGHT;
+         }
+         dropPendingPlan();
+         moveQueue.addAll(quick);
+      }
+      pendingPlan = null;
+      //Catch the model up on the turns, then face the way the plan was made for
+      while(!turnsWhilePlanning.isEmpty()) {
+         this.model.updateMove(turnsWhilePlanning.poll());
+      }
+      moveQueue.addAllFirst(getTurnMoves(model.getDirection(), plannedDirection));
+      return nextMove();
+   }
+   /**
+    * Gives the moves already planned to follow the move last returned by
+    * make_decision, without taking them off the queue. As long as moves are
+    * queued, make_decision hands them out in order whatever the view shows.
+    * @param max is the most moves to give
+    * @return the queued moves, in order
+    */
+   public char[] queued_moves(int max) {
+      if(pendingPlan != null) {
+         return new char[0];
+      }
+      char[] moves = new char[Math.min(max, moveQueue.size())];
+      for(int i = 0; i < moves.length; i++) {
+         moves[i] = moveQueue.get(i);
+      }
+      return moves;
+   }
+   /**
+    * Waits for a background plan to finish.
+    * @param plan is the plan to wait for
+    * @param timeoutNanos is the longest to wait
+    * @return whether the plan finished in time
+    */
+   private static boolean waitFor(Future<?> plan, long timeoutNanos) {
+      try {
+         plan.get(timeoutNanos, TimeUnit.NANOSECONDS);
+      }
+      catch(TimeoutException e) {
+         return false;
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      }
+      catch(ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      }
+      return true;
+   }
+   /**
+    * Takes the next move off the queue and updates the model with it.
+    * @return the move to be made
+    */
+   private char nextMove() {
+      char move = moveQueue.poll();
+      this.model.updateMove(move);
+      return move;
+   }
+   /**
+    * Starts planning in the background from the model as it is now.
+    * @return the plan being made
+    */
+   private Future<?> startPlan() {
+      plannedDirection = model.getDirection();
+      plannedGoals = model.saveGoals();
+      quickPlan = null;
+      return planner().submit(new Runnable() {
+         @Override
+         public void run() {
+            quickPlan = makeQuickPlan();
+            plan();
+         }
+      });
+   }
+   /**
+    * Stops the background plan, waiting for its thread to let go of the model,
+    * and puts back the goals it may have taken off the lists.
+    */
+   private void dropPendingPlan() {
+      stopPlan(pendingPlan);
+      moveQueue.clear();
+      model.restoreGoals(plannedGoals);
+   }
+   /**
+    * Interrupts a background plan and waits for it to let go of the model. The
+    * searches check for the interrupt, so this takes at most a search step. The
+    * planner runs one task at a time in order, so once a task queued after the
+    * plan has run, the plan is done with the model, and the thread is kept for
+    * the next plan.
+    * @param plan is the plan to stop
+    */
+   private void stopPlan(Future<?> plan) {
+      plan.cancel(true);
+      waitFor(planner().submit(new Runnable() {
+         @Override
+         public void run() {}
+      }), Long.MAX_VALUE);
+   }
+   /**
+    * Works out the moves to the nearest tile we have not visited, over tiles that
+    * need no tools, for a decision to take if the full plan is not ready in time.
+    * Nothing is planned from water, as stepping off it would leave the raft behind.
+    * @return the moves, or none if there is no such tile
+    */
+   private char[] makeQuickPlan() {
+      if(model.getCurrentTerrain() == Model.WATER) {
+         return new char[0];
+      }
+      Point loc = model.getLoc();
+      DistanceField field = new DistanceField(model, loc, false, false, false);
+      Point nearest = null;
+      for(int x = -Model.MAXIMUM_X; x <= Model.MAXIMUM_X; x++) {
+         for(int y = -Model.MAXIMUM_Y; y <= Model.MAXIMUM_Y; y++) {
+            int d = field.distanceTo(x, y);
+            if(d == DistanceField.UNREACHABLE || d == 0) {
+               continue;
+            }
+            Point p = new Point(x, y);
+            if(!model.hasVisited(p) && (nearest == null || d < field.distanceTo(nearest))) {
+               nearest = p;
+            }
+         }
+      }
+      if(nearest == null) {
+         field.release();
+         return new char[0];
+      }
+      //Walk back down the distances, filling the steps in from the end
+      Point[] steps = new Point[field.distanceTo(nearest)];
+      Point step = nearest;
+      for(int i = steps.length - 1; i >= 0; i--) {
+         steps[i] = step;
+         for(int j = 0; j < 4; j++) {
+            Point next = Model.neighbour(step, j);
+            if(field.distanceTo(next) == field.distanceTo(step) - 1) {
+               step = next;
+               break;
+            }
+         }
+      }
+      field.release();
+      ActionBuffer moves = new ActionBuffer();
+      int direction = model.getDirection();
+      Point curr = loc;
+      for(Point next : steps) {
+         int nextDirection = whatDirection(curr, next);
+         moves.addAll(getTurnMoves(direction, nextDirection));
+         moves.add(Model.MOVE_FORWARD);
+         direction = nextDirection;
+         curr = next;
+      }
+      char[] plan = new char[moves.size()];
+      for(int i = 0; i < plan.length; i++) {
+         plan[i] = moves.get(i);
+      }
+      return plan;
+   }
+   /**
+    * Fills the moveQueue by going down the priority list until something on it can be done.
+    * @throws CancellationException if the thread is interrupted while planning
+    */
+   private void plan() {
+      //Back in a state we have planned from too often, with nothing learnt since. The list
+      //below has been going round in a circle, so stop searching and just turn on the spot.
+      if(history.visit(model.stateHash()) > REPEAT_LIMIT) {
+         moveQueue.add(Model.TURN_RIGHT);
+         return;
+      }
+      Model.Goals goalsBefore = (rolloutBudgetNanos > 0) ? model.saveGoals() : null;
+      //Race the list against the other strategies on copies of the model. The list below
+      //only runs here if the race was interrupted before it gave a plan
+      if(portfolioBudgetNanos > 0) {
+         StrategyPortfolio.Plan chosen = portfolio.choose(model, portfolioBudgetNanos);
+         if(chosen != null) {
+            model.restoreGoals(chosen.goals());
+            moveQueue.addAll(chosen.moves());
+         }
+      }
       while(moveQueue.isEmpty()) {
+         if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+         }
     	  
     	 //Priority 1: Have Gold, go back to base position (0,0)
          //But we might not be able to be cause we don't have a raft anymore
          if(model.haveTreasure()) {
-            if(createPathTo(model.getLoc(), new Point(0,0))) {
+            //The model keeps the distances home up to date, so the way back needs no search
+            path.clear();
+            if(model.pathHome(path)) {
+               queueClears();
+               queuePath(model.getLoc());
+               break;
+            }
+            if(model.numDynamites() > 0 && blastPathTo(new Point(0,0))) {
                break;
             }
          }
          //Priority 2: Can see gold, go to pick it up
-         //I suppose theoretically if we need to use a raft to get there then there must be a tree there
+         //Only commit once we know we can make it back home, since landing a raft loses it.
+         //If the search runs out of time we can't tell, so just head for the gold.
          if(this.model.treasureVisible()) {
-            if(createPathTo(model.getLoc(), model.getTreasureLoc())) {
+            InventorySearch roundTrip = new InventorySearch(model);
+            if(roundTrip.search(ROUND_TRIP_BUDGET_NANOS)) {
+               path.clear();
+               clears.clear();
+               roundTrip.getPlan(path, clears);
+               queuePath(model.getLoc());
+               break;
+            }
+            if(!roundTrip.isExhausted() && createPathTo(model.getLoc(), model.getTreasureLoc())) {
                break;
             }
          }
@@ -77,26 +462,18 @@ public class Decider {
                break;
             }
          }
-         //Priority 3: Pick up any tools we can see
-         if(((!model.haveAxe()) && (!model.getAxeLocs().isEmpty()))) {
-            if(createPathTo(model.getLoc(), model.getAxeLocs().peek())) {
-               model.getAxeLocs().poll();
-               break;
-            }
-         }
-         if(((!model.haveKey()) && (!model.getKeyLocs().isEmpty()))) {
-            if(createPathTo(model.getLoc(), model.getKeyLocs().peek())) {
-               model.getKeyLocs().poll();
-               break;
-            }
+         //Priority 3: Pick up any tools we can see, in the order giving the shortest tour
+         if(pickUpTools()) {
+            break;
          }
-         if(!model.getDynamiteLocs().isEmpty()) {
-            if(createPathTo(model.getLoc(), model.getDynamiteLocs().peek())) {
-               model.getDynamiteLocs().poll();
+         //Priority 4: Explore any unexplored locations
+         //When scoring the frontier, go where the most is revealed per move
+         if(scoreFrontier) {
+            Point best = new FrontierScorer(model).bestTarget();
+            if(best != null && createPathTo(model.getLoc(), best)) {
                break;
             }
          }
-         //Priority 4: Explore any unexplored locations
          //Go to the nearest ?
          //If null is returned then there is no new info we can find
          Point toExplore = model.nearestReachableRevealingTile(model.getLoc());
@@ -131,26 +508,164 @@ public class Decider {
                break;
             }
          }
-         //Look for important items behind wall
-         //Check wall if blowable
-         //Blow up wall
-         if(createPathTo(model.getLoc(), model.nearestPointLeastObstaclesSurrounding(model.getTreasureLoc()))) {
-            if(model.numDynamites() > 0 && model.frontTileIsWall(model.getLoc())) {
-               int dir = whatDirection(model.getLoc(), model.getTreasureLoc());
-               moveQueue.addAll(getTurnMoves(model.getDirection(), dir));
-               moveQueue.add(Model.USE_DYNAMITE);
+         //Blow our way to the treasure, as long as there are enough dynamites to get back home too
+         if(model.treasureVisible() && model.numDynamites() > 0) {
+            path.clear();
+            if(BlastSearch.roundTrip(model, model.getTreasureLoc(), new Point(0,0), path) && !path.isEmpty()) {
+               queueClears();
+               queuePath(model.getLoc());
                break;
             }
+         }
+         //Nothing left to try, so go for the gold even without a known way back
+         if(model.treasureVisible() && createPathTo(model.getLoc(), model.getTreasureLoc())) {
             break;
          }
-
-         
+         //Nothing on the list can be done. Searching the same map again would give the same
+         //answer forever, so turn on the spot instead.
+         moveQueue.add(Model.TURN_RIGHT);
       }
-      move = moveQueue.poll();
-      this.model.updateMove(move);
-      return move;
+      if(rolloutBudgetNanos > 0 && cannotBeUndone()) {
+         reconsider(goalsBefore);
+      }
+   }
+   /**
+    * Whether the queued moves land the raft or use a dynamite, either of which
+    * leaves us with less than we had for good.
+    * @return whether the plan can't be taken back
+    */
+   private boolean cannotBeUndone() {
+      int x = model.getLoc().x;
+      int y = model.getLoc().y;
+      int direction = model.getDirection();
+      char under = model.getCurrentTerrain();
+      for(int i = 0; i < moveQueue.size(); i++) {
+         char move = moveQueue.get(i);
+         if(move == Model.USE_DYNAMITE) {
+            return true;
+         }
+         if(move != Model.MOVE_FORWARD) {
+            direction = Movement.turn(direction, move);
+            continue;
+         }
+         x += Movement.DX[direction];
+         y += Movement.DY[direction];
+         char next = model.tileAt(x, y);
+         if(under == Model.WATER && next != Model.WATER) {
+            return true;
+         }
+         under = next;
+      }
+      return false;
+   }
+   /**
+    * Weighs the queued plan against plans to the other places worth going to, by
+    * playing them all out on made up completions of the map, and queues the one
+    * that most often still leaves a way to win. Each of the others reveals the
+    * map or picks something up, so choosing one of them still makes progress.
+    * @param goalsBefore is how the item lists were before the queued plan was made
+    */
+   private void reconsider(Model.Goals goalsBefore) {
+      List<char[]> candidates = new ArrayList<char[]>();
+      candidates.add(queuedMoves());
+      List<Point> targets = new ArrayList<Point>();
+      Point loc = model.getLoc();
+      if(model.getCurrentTerrain() == Model.WATER) {
+         targets.add(model.nearestReachableRevealingWaterTile(loc));
+      }
+      targets.add(model.nearestReachableRevealingTile(loc));
+      if(model.treasureVisible()) {
+         targets.add(model.getTreasureLoc());
+      }
+      if(!model.haveAxe()) {
+         targets.addAll(model.getAxeLocs());
+      }
+      if(!model.haveKey()) {
+         targets.addAll(model.getKeyLocs());
+      }
+      targets.addAll(model.getDynamiteLocs());
+      for(Point target : targets) {
+         moveQueue.clear();
+         if(target == null || !createPathTo(loc, target)) {
+            continue;
+         }
+         char[] moves = queuedMoves();
+         boolean seen = false;
+         for(char[] candidate : candidates) {
+            seen |= Arrays.equals(candidate, moves);
+         }
+         if(!seen) {
+            candidates.add(moves);
+         }
+      }
+      moveQueue.clear();
+      int best = (candidates.size() == 1) ? 0 : rollouts.choose(model, candidates, rolloutBudgetNanos);
+      if(best != 0) {
+         //The queued plan may have taken its goal off a list, which it no longer goes to
+         model.restoreGoals(goalsBefore);
+      }
+      moveQueue.addAll(candidates.get(best));
+   }
+   /**
+    * Plans with the priority list alone, for a decider planning on a copy of the model.
+    * @return the moves planned
+    */
+   char[] planMoves() {
+      plan();
+      return queuedMoves();
+   }
+   /**
+    * Searches for a round trip through the treasure and back home, for a decider
+    * planning on a copy of the model.
+    * @param budgetNanos is how long the search may take
+    * @return the moves of the round trip, or null if none was found in time
+    */
+   char[] planRoundTrip(long budgetNanos) {
+      InventorySearch roundTrip = new InventorySearch(model);
+      if(!roundTrip.search(budgetNanos)) {
+         return null;
+      }
+      path.clear();
+      clears.clear();
+      roundTrip.getPlan(path, clears);
+      queuePath(model.getLoc());
+      return queuedMoves();
+   }
+   private char[] queuedMoves() {
+      char[] moves = new char[moveQueue.size()];
+      for(int i = 0; i < moves.length; i++) {
+         moves[i] = moveQueue.get(i);
+      }
+      return moves;
    }
 
+   /**
+    * Creates a path to the first tool on the shortest tour through every tool
+    * we still need. Falls back on later tools in the tour if A* cannot reach it.
+    * @return a boolean reflecting whether a path to a tool was created
+    */
+   private boolean pickUpTools() {
+      List<Point> tools = new ArrayList<Point>();
+      if(!model.haveAxe()) {
+         tools.addAll(model.getAxeLocs());
+      }
+      if(!model.haveKey()) {
+         tools.addAll(model.getKeyLocs());
+      }
+      tools.addAll(model.getDynamiteLocs());
+      if(tools.isEmpty()) {
+         return false;
+      }
+      for(Point tool : tourPlanner.plan(model, tools, TOUR_BUDGET_NANOS)) {
+         if(createPathTo(model.getLoc(), tool)) {
+            model.getAxeLocs().remove(tool);
+            model.getKeyLocs().remove(tool);
+            model.getDynamiteLocs().remove(tool);
+            return true;
+         }
+      }
+      return false;
+   }
    /**
     * Attempts to create a path to a point given a starting point.
     * Will add the moves to the moveQueue if successful
@@ -159,102 +674,110 @@ public class Decider {
     * @return a boolean reflecting whether or not it was possible to create a path to the goal from start
     */
    private boolean createPathTo(Point from, Point to) {
-      AStarSearch a = new AStarSearch(model.getWorld(), from, to);
+      if(BidirectionalSearch.ENABLED
+            && Math.abs(to.x - from.x) + Math.abs(to.y - from.y) >= BIDIRECTIONAL_MIN_DISTANCE) {
+         BidirectionalSearch b = new BidirectionalSearch(model, from, to, model.getLandmarks());
+         b.search(model.haveAxe(), model.haveKey(), model.haveRaft());
+         if(!b.reachable()) {
+            return false;
+         }
+         path.clear();
+         b.reconstructPath(path);
+         queueClears();
+         queuePath(from);
+         return true;
+      }
+      AStarSearch a = new AStarSearch(model.getWorld(), from, to, model.getLandmarks(), model.getDeadEnds());
       a.aStar(model.haveAxe(), model.haveKey(), model.haveRaft());
       boolean success = false;
       if(a.reachable()) {
-         LinkedList<Point> path = a.reconstructPath();
-         path.addFirst(from);
-         int currDirection = model.getDirection();
-         while(path.size() > 1) {
-            Point curr = path.poll();
-            int nextDirection = whatDirection(curr, path.peek());
-            this.moveQueue.addAll(getTurnMoves(currDirection, nextDirection));
-            currDirection = nextDirection;
-            if(model.getWorld().get(path.peek()) == Model.DOOR){
-               this.moveQueue.add(Model.UNLOCK_DOOR);
-            }
-            else if(model.getWorld().get(path.peek()) == Model.TREE) {
-               this.moveQueue.add(Model.CHOP_TREE);
-            }
-            this.moveQueue.add(Model.MOVE_FORWARD);
-         }
+         path.clear();
+         a.reconstructPath(path);
+         queueClears();
+         queuePath(from);
          success = true;
       }
       return success;
    }
    /**
-    * Gets the minimal amount of moves required to turn to a given direction from a given direction
-    * @param currDirection direction to turning from
-    * @param nextDirection direction to turning to
-    * @return A linked list containing the moves required to turn to the desired direction.
+    * Attempts to create a path to a point that may blow up walls, trees and doors
+    * on the way, using no more dynamites than we hold.
+    * Will add the moves to the moveQueue if successful
+    * @param to is the endpoint
+    * @return a boolean reflecting whether or not it was possible to create a path to the goal
     */
-   private LinkedList<Character> getTurnMoves(int currDirection, int nextDirection){
-      LinkedList<Character> turns = new LinkedList<Character>();
-      if(currDirection == nextDirection) {
-         return turns;
-      }
-      int leftTurns = 0;
-      int rightTurns = 0;
-      //Up = 0, Right = 1, Down = 2, Left = 3.
-      //Addition = clockwise rotation, Subtraction = anti-clockwise rotation
-
-      if(nextDirection > currDirection) {
-         //If we need to turn clockwise 3 times, just turn counter-clockwise once
-         if(nextDirection - currDirection == 3) {
-            leftTurns = 1;
-         }
-         //Otherwise just turn clockwise 1 or 2 as required
-         else {
-            rightTurns = nextDirection - currDirection;
-         }
+   private boolean blastPathTo(Point to) {
+      BlastSearch b = new BlastSearch(model, model.getLoc(), model.haveAxe(), model.haveKey(),
+            model.haveRaft(), model.numDynamites());
+      path.clear();
+      b.pathTo(to, path);
+      b.release();
+      if(path.isEmpty()) {
+         return false;
       }
-      else {
-         if(currDirection - nextDirection == 3) {
-            rightTurns = 1;
+      queueClears();
+      queuePath(model.getLoc());
+      return true;
+   }
+   /**
+    * Fills the clears buffer with the action needed to clear each door, tree or
+    * wall on the path buffer, using the tools we hold.
+    */
+   private void queueClears() {
+      clears.clear();
+      for(int i = 0; i < path.size(); i++) {
+         char tile = model.tileAt(path.x(i), path.y(i));
+         char clear = 0;
+         if(tile == Model.DOOR){
+            clear = model.haveKey() ? Model.UNLOCK_DOOR : Model.USE_DYNAMITE;
          }
-         else {
-            leftTurns = currDirection - nextDirection;
+         else if(tile == Model.TREE) {
+            clear = model.haveAxe() ? Model.CHOP_TREE : Model.USE_DYNAMITE;
          }
-      }
-      if(leftTurns == 0) {
-         for(int i = 0; i < rightTurns; i++) {
-            turns.add(Model.TURN_RIGHT);
+         else if(tile == Model.WALL) {
+            clear = Model.USE_DYNAMITE;
          }
+         clears.add(clear);
       }
-      else {
-         for(int i = 0; i < leftTurns; i++) {
-            turns.add(Model.TURN_LEFT);
+   }
+   /**
+    * Adds the moves needed to walk along the path buffer to the moveQueue, using
+    * the action in the clears buffer to clear each tile before stepping onto it.
+    * @param from is the starting point, which is not on the path
+    */
+   private void queuePath(Point from) {
+      int currX = from.x;
+      int currY = from.y;
+      int currDirection = model.getDirection();
+      for(int i = 0; i < path.size(); i++) {
+         int nextDirection = Movement.direction(currX, currY, path.x(i), path.y(i));
+         this.moveQueue.addAll(getTurnMoves(currDirection, nextDirection));
+         currDirection = nextDirection;
+         char clear = clears.get(i);
+         if(clear != 0) {
+            this.moveQueue.add(clear);
          }
+         this.moveQueue.add(Model.MOVE_FORWARD);
+         currX = path.x(i);
+         currY = path.y(i);
       }
-      return turns;
+   }
+   /**
+    * Gets the minimal amount of moves required to turn to a given direction from a given direction
+    * @param currDirection direction to turning from
+    * @param nextDirection direction to turning to
+    * @return the turns required to face the desired direction, which must not be changed
+    */
+   private char[] getTurnMoves(int currDirection, int nextDirection){
+      return Movement.TURNS[currDirection][nextDirection];
    }
    /**
     * Gives the direction of one point relative to another
     * @param curr is 'source' point
-    * @param next is the point of which we want to know the direction of
+    * @param next is the neighbouring point of which we want to know the direction of
     * @return the direction as an int, which is decipherable given the definitions in model.
     */
    private int whatDirection(Point curr, Point next) {
-      int x = (int) (next.getX() - curr.getX());
-      int y = (int) (next.getY() - curr.getY());
-      int direction = 0;
-      if(x != 0) {
-         if(x > 0) {
-            direction = Model.RIGHT;
-         }
-         else {
-            direction = Model.LEFT;
-         }
-      }
-      else {
-         if(y > 0) {
-            direction = Model.UP;
-         }
-         else {
-            direction = Model.DOWN;
-         }
-      }
-      return direction;
+      return Movement.direction(curr.x, curr.y, next.x, next.y);
    }
 }
@@ -0,0 +1,105 @@
+import java.awt.Point;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class holds a breadth first distance field over the known world. Every
+ * tile of the model's grid is given the number of steps needed to walk to it
+ * from the source tile, given the tools the agent is holding. Since the tiles
+ * that can be walked on do not depend on the direction of travel, the field
+ * also gives the distance from every tile back to the source.
+ * 
+ * The distances are stored in an IntGrid, indexed the same way as the model's
+ * grid, so a query is a single lookup. The grid is borrowed from the thread's
+ * pool, so whoever makes a field should release it once done with it.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class DistanceField {
+   
+   public static final int UNREACHABLE = Integer.MAX_VALUE;
+   
+   private Point source;
+   private IntGrid distances;
+   
+   /**
+    * Computes the distance field from the given source.
+    * @param model is the world model to search over
+    * @param source is the tile distances are measured from
+    * @param haveAxe whether the agent can pass through trees
+    * @param haveKey whether the agent can pass through doors
+    * @param haveRaft whether the agent can pass over water
+    * @throws CancellationException if the thread is interrupted while searching
+    */
+   public DistanceField(Model model, Point source, boolean haveAxe, boolean haveKey, boolean haveRaft) {
+      this.source = source;
+      this.distances = IntGrid.borrow(UNREACHABLE);
+      if(!Model.inBounds((int)source.getX(), (int)source.getY())) {
+         return;
+      }
+      IntGrid queue = IntGrid.borrow(0);
+      int head = 0;
+      int tail = 0;
+      int start = Model.index((int)source.getX(), (int)source.getY());
+      distances.set(start, 0);
+      queue.set(tail++, start);
+      while(head < tail) {
+         if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+         }
+         int curr = queue.get(head++);
+         int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+         int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+         for(int i = 0; i < 4; i++) {
+            int nextX = x + Movement.DX[i];
+            int nextY = y + Movement.DY[i];
+            if(!Model.inBounds(nextX, nextY)) {
+               continue;
+            }
+            int next = Model.index(nextX, nextY);
+            if(distances.get(next) != UNREACHABLE) {
+               continue;
+            }
+            if(!Model.canPotentiallyMoveOntoTile(model.tileAt(nextX, nextY), haveAxe, haveKey, haveRaft)) {
+               continue;
+            }
+            distances.set(next, distances.get(curr) + 1);
+            queue.set(tail++, next);
+         }
+      }
+      SearchStats.addExpanded(head);
+      IntGrid.giveBack(queue);
+   }
+   /**
+    * Gives the distances back to the pool. The field must not be read after this.
+    */
+   public void release() {
+      if(distances != null) {
+         IntGrid.giveBack(distances);
+         distances = null;
+      }
+   }
+   public Point getSource() {
+      return this.source;
+   }
+   /**
+    * Gives the number of steps between the source and the given point.
+    * @param p is the point to measure to
+    * @return the distance, or UNREACHABLE if there is no known path
+    */
+   public int distanceTo(Point p) {
+      return distanceTo((int)p.getX(), (int)p.getY());
+   }
+   /**
+    * Gives the number of steps between the source and the given tile.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return the distance, or UNREACHABLE if there is no known path
+    */
+   public int distanceTo(int x, int y) {
+      if(!Model.inBounds(x, y)) {
+         return UNREACHABLE;
+      }
+      return distances.get(Model.index(x, y));
+   }
+}
@@ -0,0 +1,130 @@
+import java.awt.Point;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class picks the exploration target that reveals the most per move.
+ * Every known tile we could stand on but have not visited is scored by how many
+ * unknown tiles would come into the 5x5 view from it, divided by the number of
+ * steps needed to get there. Targets with a lot of water around them are marked
+ * down, since exploring there tends to use up the raft. The model keeps count of
+ * the unknown and water tiles in every tile's view, so scoring a tile is a couple
+ * of array lookups.
+ * 
+ * The distances all come from one distance field from the agent, and the
+ * scoring is split into strips of the grid which are scored in parallel on the
+ * common fork-join pool, each strip giving its best tile. Interrupting the
+ * pool's threads would not reach the scoring, so the strips stop as soon as the
+ * thread asking for the target is interrupted.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class FrontierScorer {
+   
+   //Strips of at most this many columns are scored on a single thread
+   private static int STRIP_WIDTH = 16;
+   //How much a view full of water lowers a target's score
+   private static double WATER_RISK = 0.5;
+   
+   private Model model;
+   private DistanceField distances;
+   private Thread caller;
+   
+   /**
+    * Sets up the scorer for the agent's current location.
+    * @param model is the current world model
+    */
+   public FrontierScorer(Model model) {
+      this.model = model;
+      this.distances = new DistanceField(model, model.getLoc(), model.haveAxe(), model.haveKey(), model.haveRaft());
+   }
+   /**
+    * Gives the reachable unvisited tile that reveals the most unknown tiles per move.
+    * Can only be called once, as the distances are given back afterwards.
+    * @return the best tile, or null if no reachable tile would reveal anything
+    * @throws CancellationException if the calling thread is interrupted while scoring
+    */
+   public Point bestTarget() {
+      caller = Thread.currentThread();
+      Candidate best = ForkJoinPool.commonPool().invoke(new StripTask(-Model.MAXIMUM_X, Model.MAXIMUM_X + 1));
+      distances.release();
+      return (best == null) ? null : best.tile;
+   }
+   /**
+    * Scores a single tile.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return the number of tiles revealed per move, or 0 if the tile is not worth going to
+    */
+   private double score(int x, int y) {
+      int distance = distances.distanceTo(x, y);
+      if(distance == DistanceField.UNREACHABLE || distance == 0) {
+         return 0;
+      }
+      if(model.hasVisited(new Point(x, y))) {
+         return 0;
+      }
+      int unknown = model.unknownInView(x, y);
+      int water = model.waterInView(x, y);
+      double risk = 1 - WATER_RISK * water / (Model.WINDOW_SIZE * Model.WINDOW_SIZE);
+      return risk * unknown / distance;
+   }
+   /**
+    * A scored tile.
+    */
+   private static class Candidate {
+      private Point tile;
+      private double score;
+      
+      private Candidate(Point tile, double score) {
+         this.tile = tile;
+         this.score = score;
+      }
+   }
+   /**
+    * Finds the best tile among the columns in [fromX, toX), splitting the
+    * columns in two until the strips are narrow enough.
+    */
+   private class StripTask extends RecursiveTask<Candidate> {
+      private static final long serialVersionUID = 1L;
+      private int fromX;
+      private int toX;
+      
+      private StripTask(int fromX, int toX) {
+         this.fromX = fromX;
+         this.toX = toX;
+      }
+      @Override
+      protected Candidate compute() {
+         if(toX - fromX > STRIP_WIDTH) {
+            int mid = (fromX + toX) / 2;
+            StripTask left = new StripTask(fromX, mid);
+            left.fork();
+            Candidate right = new StripTask(mid, toX).compute();
+            return better(left.join(), right);
+         }
+         Candidate best = null;
+         for(int x = fromX; x < toX; x++) {
+            if(caller.isInterrupted()) {
+               throw new CancellationException();
+            }
+            for(int y = -Model.MAXIMUM_Y; y <= Model.MAXIMUM_Y; y++) {
+               double s = score(x, y);
+               if(s > 0 && (best == null || s > best.score)) {
+                  best = new Candidate(new Point(x, y), s);
+               }
+            }
+         }
+         return best;
+      }
+   }
+   private static Candidate better(Candidate a, Candidate b) {
+      if(a == null) {
+         return b;
+      }
+      if(b == null) {
+         return a;
+      }
+      return (b.score > a.score) ? b : a;
+   }
+}
@@ -0,0 +1,227 @@
+import java.awt.Point;
+
+/**
+ * The cost of getting from every tile back home to (0,0) with the tools we
+ * hold, kept up to date as the map is revealed. Costs are counted as A* counts
+ * them: one for each step, and AStarSearch.TREE_COST more for each tree
+ * chopped, so the way home chops as few trees as it can before it takes as few
+ * steps as it can.
+ * While the tools stay the same, a tile changing can only open a way or make it
+ * cheaper, never close one, so each change is spread out from that tile alone
+ * rather than measuring the whole map again. Only a change of tools, or a tile
+ * closing, makes the next query measure everything again.
+ *
+ * The way home from any tile is found by walking down the costs, so asking for
+ * it costs no search at all.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class HomeField {
+
+   static final int UNREACHABLE = DistanceField.UNREACHABLE;
+
+   private Model model;
+   private int home;
+   private IntGrid distances;
+   //Tiles whose neighbours need checking, as ring buffers: those reached by a
+   //plain step, and those reached by chopping a tree along with the cost they were reached at
+   private IntGrid queue;
+   private IntGrid treeQueue;
+   private IntGrid treeCosts;
+   //The tools the distances were measured with, and whether they are still right for them
+   private boolean haveAxe;
+   private boolean haveKey;
+   private boolean haveRaft;
+   private boolean valid;
+
+   public HomeField(Model model) {
+      this.model = model;
+      this.home = Model.index(0, 0);
+      this.distances = IntGrid.allocate(Model.WIDTH * Model.HEIGHT, UNREACHABLE);
+      this.queue = IntGrid.allocate(Model.WIDTH * Model.HEIGHT, 0);
+      this.treeQueue = IntGrid.allocate(Model.WIDTH * Model.HEIGHT, 0);
+      this.treeCosts = IntGrid.allocate(Model.WIDTH * Model.HEIGHT, 0);
+      this.valid = false;
+   }
+   /**
+    * Called by the model whenever a tile changes, to open up any way it makes,
+    * or make the ways through it cheaper when it was a tree that has been chopped.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @param oldTile is what the tile held
+    * @param newTile is what the tile now holds
+    */
+   void tileChanged(int x, int y, char oldTile, char newTile) {
+      if(!valid) {
+         return;
+      }
+      boolean wasOpen = Model.canPotentiallyMoveOntoTile(oldTile, haveAxe, haveKey, haveRaft);
+      boolean isOpen = Model.canPotentiallyMoveOntoTile(newTile, haveAxe, haveKey, haveRaft);
+      int tile = Model.index(x, y);
+      if(wasOpen && isOpen) {
+         if(stepCost(oldTile) > stepCost(newTile)) {
+            spreadFrom(tile);
+         }
+         else if(stepCost(oldTile) < stepCost(newTile)) {
+            valid = false;
+         }
+         return;
+      }
+      if(!wasOpen && !isOpen) {
+         return;
+      }
+      if(wasOpen) {
+         //Closing a tile can make other tiles further from home, which can't be spread out
+         valid = false;
+         return;
+      }
+      int best = UNREACHABLE;
+      for(int i = 0; i < 4; i++) {
+         int nextX = x + Movement.DX[i];
+         int nextY = y + Movement.DY[i];
+         if(!Model.inBounds(nextX, nextY)) {
+            continue;
+         }
+         int distance = distances.get(Model.index(nextX, nextY));
+         if(distance != UNREACHABLE) {
+            best = Math.min(best, distance + stepCost(model.tileAt(nextX, nextY)));
+         }
+      }
+      if(best < distances.get(tile)) {
+         distances.set(tile, best);
+         spreadFrom(tile);
+      }
+   }
+   /**
+    * Gives the cost of getting home from a tile, counting TREE_COST extra for each tree chopped.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return the cost, or UNREACHABLE if there is no known way home
+    */
+   public int distanceFrom(int x, int y) {
+      refresh();
+      if(!Model.inBounds(x, y)) {
+         return UNREACHABLE;
+      }
+      return distances.get(Model.index(x, y));
+   }
+   /**
+    * Gives a cheapest way home by walking down the costs, going straight on
+    * where there is a choice so the path needs as few turns as possible.
+    * @param from is the tile to start from
+    * @param direction is the direction faced at the start
+    * @param path is the buffer to add the path to, not including the start
+    * @return whether there is a known way home
+    */
+   public boolean pathFrom(Point from, int direction, PathBuffer path) {
+      int x = from.x;
+      int y = from.y;
+      int distance = distanceFrom(x, y);
+      if(distance == UNREACHABLE) {
+         return false;
+      }
+      while(distance > 0) {
+         int step = -1;
+         for(int i = 0; i < 4; i++) {
+            int d = (direction + i) % 4;
+            int nextX = x + Movement.DX[d];
+            int nextY = y + Movement.DY[d];
+            if(!Model.inBounds(nextX, nextY)) {
+               continue;
+            }
+            int next = distances.get(Model.index(nextX, nextY));
+            if(next != UNREACHABLE && next + stepCost(model.tileAt(nextX, nextY)) == distance) {
+               step = d;
+               break;
+            }
+         }
+         direction = step;
+         x += Movement.DX[step];
+         y += Movement.DY[step];
+         path.add(Model.index(x, y));
+         distance = distances.get(Model.index(x, y));
+      }
+      return true;
+   }
+   /**
+    * Measures every distance again if the tools have changed or a tile has closed.
+    */
+   private void refresh() {
+      if(valid && haveAxe == model.haveAxe() && haveKey == model.haveKey() && haveRaft == model.haveRaft()) {
+         return;
+      }
+      haveAxe = model.haveAxe();
+      haveKey = model.haveKey();
+      haveRaft = model.haveRaft();
+      for(int i = 0; i < Model.WIDTH * Model.HEIGHT; i++) {
+         distances.set(i, UNREACHABLE);
+      }
+      distances.set(home, 0);
+      spreadFrom(home);
+      valid = true;
+   }
+   /**
+    * Spreads a tile's cost out to the open tiles around it, and on from any
+    * tile that it brings closer to home. A step onto a tile costs either one or,
+    * for a tree, one more than TREE_COST, so the tiles reached each way are kept
+    * on their own queue. Tiles are taken off the queues cheapest first, so the
+    * costs on each queue only go up and each tile is brought to its final cost
+    * the first time it is taken off. Tiles reached more cheaply after being
+    * queued behind a tree are skipped when they come off that queue.
+    * @param start is the tile whose cost, or the cost of stepping onto it, has just been lowered
+    */
+   private void spreadFrom(int start) {
+      int size = Model.WIDTH * Model.HEIGHT;
+      int head = 0;
+      int tail = 0;
+      int treeHead = 0;
+      int treeTail = 0;
+      int expanded = 0;
+      queue.set(tail++ % size, start);
+      while(head < tail || treeHead < treeTail) {
+         int curr;
+         if(treeHead == treeTail || (head < tail
+               && distances.get(queue.get(head % size)) <= treeCosts.get(treeHead % size))) {
+            curr = queue.get(head++ % size);
+         }
+         else {
+            curr = treeQueue.get(treeHead % size);
+            if(treeCosts.get(treeHead++ % size) != distances.get(curr)) {
+               continue;
+            }
+         }
+         expanded++;
+         int x = curr % Model.WIDTH - Model.MAXIMUM_X;
+         int y = curr / Model.WIDTH - Model.MAXIMUM_Y;
+         //Stepping from a neighbour onto this tile costs the same whichever neighbour it is
+         int cost = stepCost(model.tileAt(x, y));
+         int nextDistance = distances.get(curr) + cost;
+         for(int i = 0; i < 4; i++) {
+            int nextX = x + Movement.DX[i];
+            int nextY = y + Movement.DY[i];
+            if(!Model.inBounds(nextX, nextY)) {
+               continue;
+            }
+            int next = Model.index(nextX, nextY);
+            if(nextDistance >= distances.get(next)) {
+               continue;
+            }
+            if(!Model.canPotentiallyMoveOntoTile(model.tileAt(nextX, nextY), haveAxe, haveKey, haveRaft)) {
+               continue;
+            }
+            distances.set(next, nextDistance);
+            if(cost == 1) {
+               queue.set(tail++ % size, next);
+            }
+            else {
+               treeQueue.set(treeTail % size, next);
+               treeCosts.set(treeTail++ % size, nextDistance);
+            }
+         }
+      }
+      SearchStats.addExpanded(expanded);
+   }
+   private static int stepCost(char tile) {
+      return (tile == Model.TREE) ? 1 + AStarSearch.TREE_COST : 1;
+   }
+}
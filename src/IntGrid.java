@@ -0,0 +1,104 @@
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Storage for one int per cell, used for the model's view counts and for the
+ * scratch arrays of the searches. Like TileGrid, it is a plain int array unless
+ * the JVM is started with -Draft.offheap=true, in which case it lives in a
+ * direct buffer outside the Java heap.
+ * 
+ * Searches borrow their scratch grids from a pool kept by each thread and give
+ * them back when they are done, rather than allocating new ones, so that a game
+ * doesn't make a new grid of garbage, or a new direct buffer, for every search.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public abstract class IntGrid {
+   
+   //How many free grids each thread keeps for its searches to borrow
+   private static int POOL_LIMIT = 16;
+   //Grids the size of the model's grid that each thread has been given back
+   private static final ThreadLocal<ArrayDeque<IntGrid>> FREE = new ThreadLocal<ArrayDeque<IntGrid>>() {
+      @Override
+      protected ArrayDeque<IntGrid> initialValue() {
+         return new ArrayDeque<IntGrid>();
+      }
+   };
+   
+   public abstract int get(int index);
+   
+   public abstract void set(int index, int value);
+   
+   /**
+    * Creates a grid of the given size, filled with the given value.
+    * @param size is the number of cells
+    * @param fill is the value every cell starts as
+    * @return the grid, off the heap if the JVM was asked for it
+    */
+   public static IntGrid allocate(int size, int fill) {
+      IntGrid grid = TileGrid.OFF_HEAP ? new DirectIntGrid(size) : new HeapIntGrid(size);
+      if(fill != 0) {
+         for(int i = 0; i < size; i++) {
+            grid.set(i, fill);
+         }
+      }
+      return grid;
+   }
+   /**
+    * Takes a grid the size of the model's grid from this thread's pool, or
+    * creates one if the pool is empty, and fills it with the given value.
+    * @param fill is the value every cell starts as
+    * @return the grid, which must be given back with giveBack once nothing reads it
+    */
+   public static IntGrid borrow(int fill) {
+      IntGrid grid = FREE.get().poll();
+      if(grid == null) {
+         return allocate(Model.WIDTH * Model.HEIGHT, fill);
+      }
+      for(int i = 0; i < Model.WIDTH * Model.HEIGHT; i++) {
+         grid.set(i, fill);
+      }
+      return grid;
+   }
+   /**
+    * Gives a borrowed grid back to this thread's pool. The pool keeps at most
+    * POOL_LIMIT grids and leaves any more to the garbage collector.
+    * @param grid is the grid, which must not be read or written again
+    */
+   public static void giveBack(IntGrid grid) {
+      ArrayDeque<IntGrid> free = FREE.get();
+      if(free.size() < POOL_LIMIT) {
+         free.push(grid);
+      }
+   }
+   private static class HeapIntGrid extends IntGrid {
+      private int[] values;
+      
+      private HeapIntGrid(int size) {
+         this.values = new int[size];
+      }
+      @Override
+      public int get(int index) {
+         return values[index];
+      }
+      @Override
+      public void set(int index, int value) {
+         values[index] = value;
+      }
+   }
+   private static class DirectIntGrid extends IntGrid {
+      private IntBuffer values;
+      
+      private DirectIntGrid(int size) {
+         this.values = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+      }
+      @Override
+      public int get(int index) {
+         return values.get(index);
+      }
+      @Override
+      public void set(int index, int value) {
+         values.put(index, value);
+      }
+   }
+}
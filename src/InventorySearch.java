@@ -0,0 +1,285 @@
+import java.awt.Point;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class holds a breadth first search over the full state of the agent:
+ * its position, whether it holds an axe, key, raft or the treasure, how many
+ * dynamites it holds, and which of the known dynamites and trees it has used
+ * up. A goal state is standing on the start with the treasure, so finding one
+ * proves that a trip to the treasure and back home is possible on the known
+ * map before the agent commits to it. This matters because landing a raft
+ * loses it, so a path that looks fine one way may never come back.
+ * 
+ * States are packed into a long and remembered in a PackedStateTable, which
+ * also holds the state each one was reached from so the plan can be rebuilt.
+ * The search is kept sound rather than complete: walls blown up earlier in the
+ * plan cost a dynamite again, dynamites beyond the nearest MAX_TRACKED are never
+ * picked up, and trees beyond the nearest MAX_TRACKED never give a raft.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class InventorySearch {
+   
+   private static int MAX_TRACKED = 16;
+   private static int MAX_DYNAMITES = 15;
+   
+   //Bit layout of a packed state
+   private static int Y_SHIFT = 8;
+   private static long AXE = 1L << 16;
+   private static long KEY = 1L << 17;
+   private static long RAFT = 1L << 18;
+   private static long TREASURE = 1L << 19;
+   private static int DYNAMITE_SHIFT = 20;
+   private static int DYNAMITE_MASK_SHIFT = 24;
+   private static int TREE_MASK_SHIFT = 40;
+   
+   private Model model;
+   private Point home;
+   private List<Point> dynamites;
+   private List<Point> trees;
+   private long start;
+   
+   private PackedStateTable cameFrom;
+   private long goal;
+   private boolean exhausted;
+   
+   public InventorySearch(Model model) {
+      this.model = model;
+      this.home = new Point(0,0);
+      this.dynamites = nearest(model.getDynamiteLocs(), model.getLoc());
+      this.trees = nearest(model.getTreeLocs(), model.getLoc());
+      long state = pack((int)model.getLoc().getX(), (int)model.getLoc().getY());
+      if(model.haveAxe()) {
+         state |= AXE;
+      }
+      if(model.haveKey()) {
+         state |= KEY;
+      }
+      if(model.haveRaft()) {
+         state |= RAFT;
+      }
+      if(model.haveTreasure()) {
+         state |= TREASURE;
+      }
+      state |= (long)Math.min(model.numDynamites(), MAX_DYNAMITES) << DYNAMITE_SHIFT;
+      this.start = state;
+      this.goal = -1;
+      this.exhausted = false;
+   }
+   /**
+    * Searches for a plan that ends at home holding the treasure.
+    * @param budgetNanos is how long the search may run for
+    * @return whether a plan was found
+    * @throws CancellationException if the thread is interrupted while searching
+    */
+   public boolean search(long budgetNanos) {
+      long deadline = System.nanoTime() + budgetNanos;
+      cameFrom = new PackedStateTable(1 << 12);
+      long[] queue = new long[1 << 12];
+      int head = 0;
+      int tail = 0;
+      //The queue is compacted as it goes, so head does not count every state taken off it
+      int expanded = 0;
+      cameFrom.putIfAbsent(start, start);
+      queue[tail++] = start;
+      while(head < tail) {
+         if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+         }
+         if((head & 0x3ff) == 0 && System.nanoTime() > deadline) {
+            SearchStats.addExpanded(expanded);
+            return false;
+         }
+         long curr = queue[head++];
+         expanded++;
+         if(isGoal(curr)) {
+            goal = curr;
+            SearchStats.addExpanded(expanded);
+            return true;
+         }
+         for(int i = 0; i < 4; i++) {
+            long next = step(curr, i);
+            if(next < 0 || !cameFrom.putIfAbsent(next, curr)) {
+               continue;
+            }
+            if(tail == queue.length) {
+               //Shift the unread part of the queue down, growing if it is mostly unread
+               int pending = tail - head;
+               long[] newQueue = (pending * 2 > queue.length) ? new long[queue.length * 2] : queue;
+               System.arraycopy(queue, head, newQueue, 0, pending);
+               queue = newQueue;
+               head = 0;
+               tail = pending;
+            }
+            queue[tail++] = next;
+         }
+      }
+      SearchStats.addExpanded(expanded);
+      exhausted = true;
+      return false;
+   }
+   /**
+    * Whether the last search looked at every reachable state, so a failed
+    * search proves there is no plan on the known map.
+    * @return whether the search space was exhausted
+    */
+   public boolean isExhausted() {
+      return this.exhausted;
+   }
+   /**
+    * Gives the tiles walked through by the plan found by search, and the action
+    * needed to clear each tile before stepping onto it.
+    * @param path is the buffer to add the tiles to, not including the starting tile
+    * @param clears is the buffer to add the chop, unlock or dynamite action for each
+    * step to, or 0 when the tile is clear
+    */
+   public void getPlan(PathBuffer path, ActionBuffer clears) {
+      int steps = 0;
+      for(long state = goal; state != start; state = cameFrom.get(state)) {
+         steps++;
+      }
+      long[] states = new long[steps];
+      for(long state = goal; state != start; state = cameFrom.get(state)) {
+         states[--steps] = state;
+      }
+      BitSet cleared = new BitSet(Model.WIDTH * Model.HEIGHT);
+      long prev = start;
+      for(long state : states) {
+         int tileIndex = Model.index(x(state), y(state));
+         char tile = model.tileAt(x(state), y(state));
+         char clear = 0;
+         if(!cleared.get(tileIndex)) {
+            if(tile == Model.TREE) {
+               clear = ((prev & AXE) != 0) ? Model.CHOP_TREE : Model.USE_DYNAMITE;
+            }
+            else if(tile == Model.DOOR) {
+               clear = ((prev & KEY) != 0) ? Model.UNLOCK_DOOR : Model.USE_DYNAMITE;
+            }
+            else if(tile == Model.WALL) {
+               clear = Model.USE_DYNAMITE;
+            }
+            cleared.set(tileIndex);
+         }
+         path.add(tileIndex);
+         clears.add(clear);
+         prev = state;
+      }
+   }
+   private boolean isGoal(long state) {
+      return (state & TREASURE) != 0 && x(state) == home.x && y(state) == home.y;
+   }
+   /**
+    * Gives the state reached by moving one tile in the given direction.
+    * @param state is the packed state to move from
+    * @param direction is the direction to move in
+    * @return the packed state after the move, or -1 if the move is not possible
+    */
+   private long step(long state, int direction) {
+      boolean onWater = model.tileAt(x(state), y(state)) == Model.WATER;
+      int x = x(state) + Movement.DX[direction];
+      int y = y(state) + Movement.DY[direction];
+      if(!Model.inBounds(x, y)) {
+         return -1;
+      }
+      Point p = new Point(x, y);
+      char tile = model.tileAt(x, y);
+      int numDynamites = (int)((state >>> DYNAMITE_SHIFT) & 0xf);
+      long next = (state & ~0xffffL) | pack(x, y);
+      int tree = trees.indexOf(p);
+      switch(tile) {
+      case Model.WATER:
+         if(!onWater && (state & RAFT) == 0) {
+            return -1;
+         }
+         return next;
+      case Model.TREE:
+         if(tree >= 0 && (state & (1L << (TREE_MASK_SHIFT + tree))) != 0) {
+            break;
+         }
+         if((state & AXE) != 0) {
+            //Only a tree we are keeping track of can be counted on for a raft
+            if(tree >= 0) {
+               next |= RAFT | (1L << (TREE_MASK_SHIFT + tree));
+            }
+            break;
+         }
+         if(numDynamites == 0) {
+            return -1;
+         }
+         next = withDynamites(next, numDynamites - 1);
+         if(tree >= 0) {
+            next |= 1L << (TREE_MASK_SHIFT + tree);
+         }
+         break;
+      case Model.DOOR:
+      case Model.WALL:
+         //A door we hold the key for is opened, otherwise it can be blown up like a wall
+         if(tile == Model.DOOR && (state & KEY) != 0) {
+            break;
+         }
+         if(numDynamites == 0) {
+            return -1;
+         }
+         next = withDynamites(next, numDynamites - 1);
+         break;
+      case Model.AXE:
+         next |= AXE;
+         break;
+      case Model.KEY:
+         next |= KEY;
+         break;
+      case Model.TREASURE:
+         next |= TREASURE;
+         break;
+      case Model.DYNAMITE:
+         int dynamite = dynamites.indexOf(p);
+         if(dynamite >= 0 && (state & (1L << (DYNAMITE_MASK_SHIFT + dynamite))) == 0) {
+            next |= 1L << (DYNAMITE_MASK_SHIFT + dynamite);
+            next = withDynamites(next, Math.min(numDynamites + 1, MAX_DYNAMITES));
+         }
+         break;
+      case Model.PLAIN:
+         break;
+      default:
+         return -1;
+      }
+      //Landing the raft loses it
+      if(onWater) {
+         next &= ~RAFT;
+      }
+      return next;
+   }
+   private static long withDynamites(long state, int numDynamites) {
+      return (state & ~(0xfL << DYNAMITE_SHIFT)) | ((long)numDynamites << DYNAMITE_SHIFT);
+   }
+   private static long pack(int x, int y) {
+      return (x + Model.MAXIMUM_X) | ((long)(y + Model.MAXIMUM_Y) << Y_SHIFT);
+   }
+   private static int x(long state) {
+      return (int)(state & 0xff) - Model.MAXIMUM_X;
+   }
+   private static int y(long state) {
+      return (int)((state >>> Y_SHIFT) & 0xff) - Model.MAXIMUM_Y;
+   }
+   /**
+    * Picks out the points nearest to the agent, up to MAX_TRACKED of them.
+    * @param points are the candidate points
+    * @param curr is the location of the agent
+    * @return the nearest points, nearest first
+    */
+   private static List<Point> nearest(List<Point> points, final Point curr) {
+      List<Point> sorted = new ArrayList<Point>(points);
+      Collections.sort(sorted, new Comparator<Point>() {
+         @Override
+         public int compare(Point a, Point b) {
+            return (int)(Math.abs(a.getX() - curr.getX()) + Math.abs(a.getY() - curr.getY())
+                  - Math.abs(b.getX() - curr.getX()) - Math.abs(b.getY() - curr.getY()));
+         }
+      });
+      if(sorted.size() > MAX_TRACKED) {
+         return new ArrayList<Point>(sorted.subList(0, MAX_TRACKED));
+      }
+      return sorted;
+   }
+}
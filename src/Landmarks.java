@@ -0,0 +1,109 @@
+import java.awt.Point;
+import java.util.*;
+
+/**
+ * True walking distances from a few landmark tiles on the known map, used to
+ * give A* a better lower bound than the Manhattan distance. For any landmark L,
+ * the distance from a tile to the goal is at least the difference between their
+ * distances from L, by the triangle inequality. On maps full of walls and water
+ * this is far closer to the real distance than the Manhattan distance, so A*
+ * looks at fewer tiles.
+ *
+ * The landmarks are home, the treasure and the tools, as those are where the
+ * paths we plan start and end. The distances are made with the tools held when
+ * they were made, and they count a tree as a single step, so they never cost
+ * more than a path A* would take with the same tools.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class Landmarks {
+
+   private static int MAX_LANDMARKS = 4;
+
+   private List<DistanceField> fields;
+   private boolean haveAxe;
+   private boolean haveKey;
+   private boolean haveRaft;
+
+   /**
+    * Measures the distances from each landmark on the model.
+    * @param model is the world model to measure on
+    */
+   public Landmarks(Model model) {
+      this.haveAxe = model.haveAxe();
+      this.haveKey = model.haveKey();
+      this.haveRaft = model.haveRaft();
+      List<Point> landmarks = new ArrayList<Point>();
+      landmarks.add(new Point(0,0));
+      if(model.treasureVisible()) {
+         landmarks.add(model.getTreasureLoc());
+      }
+      landmarks.addAll(model.getAxeLocs());
+      landmarks.addAll(model.getKeyLocs());
+      landmarks.addAll(model.getDynamiteLocs());
+      this.fields = new ArrayList<DistanceField>();
+      for(Point landmark : landmarks) {
+         if(fields.size() == MAX_LANDMARKS) {
+            break;
+         }
+         fields.add(new DistanceField(model, landmark, haveAxe, haveKey, haveRaft));
+      }
+   }
+   /**
+    * Whether the distances can bound a search made with the given tools. Holding
+    * fewer tools only makes paths longer, so the bound still holds.
+    * @param haveAxe is whether the search may walk through trees
+    * @param haveKey is whether the search may walk through doors
+    * @param haveRaft is whether the search may walk on water
+    * @return whether lowerBound may be used for the search
+    */
+   public boolean covers(boolean haveAxe, boolean haveKey, boolean haveRaft) {
+      return (this.haveAxe || !haveAxe) && (this.haveKey || !haveKey) && (this.haveRaft || !haveRaft);
+   }
+   /**
+    * Gives the distance fields back to the pool. The landmarks must not be used after this.
+    */
+   public void release() {
+      for(DistanceField field : fields) {
+         field.release();
+      }
+   }
+   /**
+    * Whether some landmark reaches the first tile but not the second, which means
+    * no path between them exists with the tools the distances were made with.
+    * @param x is the x coordinate of the tile to go from
+    * @param y is the y coordinate of the tile to go from
+    * @param goalX is the x coordinate of the tile to go to
+    * @param goalY is the y coordinate of the tile to go to
+    * @return whether the tiles are known to be unconnected
+    */
+   public boolean separates(int x, int y, int goalX, int goalY) {
+      for(DistanceField field : fields) {
+         if(field.distanceTo(x, y) != DistanceField.UNREACHABLE
+               && field.distanceTo(goalX, goalY) == DistanceField.UNREACHABLE) {
+            return true;
+         }
+      }
+      return false;
+   }
+   /**
+    * Gives a lower bound on the number of steps between two tiles.
+    * @param x is the x coordinate of the tile to measure from
+    * @param y is the y coordinate of the tile to measure from
+    * @param goalX is the x coordinate of the tile to measure to
+    * @param goalY is the y coordinate of the tile to measure to
+    * @return the largest difference in distance from a landmark, or 0 if no landmark reaches both
+    */
+   public int lowerBound(int x, int y, int goalX, int goalY) {
+      int bound = 0;
+      for(DistanceField field : fields) {
+         int from = field.distanceTo(x, y);
+         int to = field.distanceTo(goalX, goalY);
+         if(from == DistanceField.UNREACHABLE || to == DistanceField.UNREACHABLE) {
+            continue;
+         }
+         bound = Math.max(bound, Math.abs(to - from));
+      }
+      return bound;
+   }
+}
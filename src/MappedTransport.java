@@ -0,0 +1,296 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * A transport for an engine and agent on the same machine, which skips the
+ * kernel's socket code. Both processes map the same file into memory. The file
+ * holds two ring buffers, one for each direction, each with a single writer and
+ * a single reader. The writer only moves the ring's tail and the reader only
+ * moves its head, so no locks are needed: the positions are published with
+ * release writes and read with acquire reads, which makes the bytes written
+ * before a tail update visible to the reader.
+ * 
+ * The engine creates the file and the agent attaches to it. Attaching is a
+ * handshake on a state word in the header: the agent claims a waiting file, and
+ * the engine accepts the claim. Only one of them can move the state on, so an
+ * agent never takes a file left behind by an engine that has gone, and an
+ * engine never takes an agent that has given up on it. A side that is closed,
+ * or whose JVM exits, marks its ring closed so the other side reads the end of
+ * the stream instead of waiting forever. The engine also clears the file's
+ * magic number and deletes it, so no later agent finds it.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class MappedTransport implements Transport {
+   
+   private static long MAGIC = 0x52414654L; //"RAFT", written last once the file is ready
+   private static int CAPACITY = 1 << 16;   //bytes in each ring, a power of two
+   private static int LINE = 64;            //each position gets a cache line to itself
+   private static int DATA = 8 * LINE;
+   private static int FILE_SIZE = DATA + 2 * CAPACITY;
+   //How long a reader or writer spins before it starts sleeping between checks
+   private static int SPINS = 1000;
+   private static long PARK_NANOS = 20000L;
+   private static long CONNECT_TIMEOUT_MILLIS = 10000L;
+   //How long an agent waits for the engine to accept its claim before trying again
+   private static long ACCEPT_TIMEOUT_MILLIS = 1000L;
+   
+   //The attach state, on the line after the magic number
+   private static int STATE = LINE / 2;
+   private static long WAITING = 0L;   //the engine is waiting for an agent
+   private static long CLAIMED = 1L;   //an agent has claimed the file
+   private static long ACCEPTED = 2L;  //the engine has taken the agent
+   private static long ABANDONED = 3L; //one side gave up, so the file is dead
+   
+   private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+   
+   private MappedByteBuffer buffer;
+   private Ring in;
+   private Ring out;
+   private File owned; //the file, if this side created it
+   private Thread closer;
+   
+   private MappedTransport(MappedByteBuffer buffer, int inRing, int outRing, File owned) {
+      this.buffer = buffer;
+      this.in = new Ring(inRing);
+      this.out = new Ring(outRing);
+      this.owned = owned;
+      this.closer = new Thread() {
+         @Override
+         public void run() {
+            close();
+         }
+      };
+      Runtime.getRuntime().addShutdownHook(closer);
+   }
+   /**
+    * Creates the shared file and waits for an agent to attach to it. Any old file
+    * at the path is replaced.
+    * @param path is where to create the file
+    * @return the transport to the agent
+    * @throws IOException if the file can't be created or no agent attaches in time
+    */
+   public static MappedTransport create(String path) throws IOException {
+      File file = new File(path);
+      file.delete();
+      MappedByteBuffer buffer = map(file);
+      LONGS.setRelease(buffer, STATE, WAITING);
+      LONGS.setRelease(buffer, 0, MAGIC);
+      long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+      while(!LONGS.compareAndSet(buffer, STATE, CLAIMED, ACCEPTED)) {
+         //Giving up only wins if no agent has claimed the file in the meantime
+         if(System.currentTimeMillis() > deadline && LONGS.compareAndSet(buffer, STATE, WAITING, ABANDONED)) {
+            LONGS.setRelease(buffer, 0, 0L);
+            file.delete();
+            throw new IOException("No agent attached to " + path);
+         }
+         LockSupport.parkNanos(1000000L);
+      }
+      return new MappedTransport(buffer, 1, 0, file);
+   }
+   /**
+    * Attaches to a file created by the engine, waiting for one that an engine is
+    * waiting on to appear.
+    * @param path is the file the engine created
+    * @return the transport to the engine
+    * @throws IOException if no engine accepts in time
+    */
+   public static MappedTransport connect(String path) throws IOException {
+      File file = new File(path);
+      long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+      while(System.currentTimeMillis() <= deadline) {
+         if(file.length() < FILE_SIZE) {
+            LockSupport.parkNanos(1000000L);
+            continue;
+         }
+         //The path is mapped afresh each time, as the engine may replace a dead file
+         MappedByteBuffer buffer;
+         try {
+            buffer = map(file);
+         }
+         catch(FileNotFoundException e) {
+            continue; //deleted between looking for it and opening it
+         }
+         if((long)LONGS.getAcquire(buffer, 0) == MAGIC && LONGS.compareAndSet(buffer, STATE, WAITING, CLAIMED)
+               && accepted(buffer)) {
+            return new MappedTransport(buffer, 0, 1, null);
+         }
+         LockSupport.parkNanos(10000000L);
+      }
+      throw new IOException("No engine at " + path);
+   }
+   /**
+    * Waits for the engine to accept a claim, giving the file up if it doesn't.
+    * @param buffer is the claimed file
+    * @return whether the engine accepted
+    */
+   private static boolean accepted(MappedByteBuffer buffer) {
+      long deadline = System.currentTimeMillis() + ACCEPT_TIMEOUT_MILLIS;
+      while((long)LONGS.getAcquire(buffer, STATE) != ACCEPTED) {
+         //Giving up only wins if the engine has not accepted in the meantime
+         if(System.currentTimeMillis() > deadline && LONGS.compareAndSet(buffer, STATE, CLAIMED, ABANDONED)) {
+            return false;
+         }
+         LockSupport.parkNanos(1000000L);
+      }
+      return true;
+   }
+   private static MappedByteBuffer map(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+         if(raf.length() < FILE_SIZE) {
+            raf.setLength(FILE_SIZE);
+         }
+         return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+      }
+      finally {
+         //The mapping stays valid after the file is closed
+         raf.close();
+      }
+   }
+   @Override
+   public InputStream getInputStream() {
+      return new InputStream() {
+         @Override
+         public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (in.read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+         }
+         @Override
+         public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, len);
+         }
+      };
+   }
+   @Override
+   public OutputStream getOutputStream() {
+      return new OutputStream() {
+         @Override
+         public void write(int b) throws IOException {
+            out.write(new byte[] { (byte)b }, 0, 1);
+         }
+         @Override
+         public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+         }
+      };
+   }
+   /**
+    * Closes this side's ring, and deletes the file if this side created it. The
+    * shutdown hook is dropped too, so a process opening many transports does not
+    * keep every mapping alive until it exits.
+    */
+   @Override
+   public void close() {
+      out.close();
+      if(owned != null) {
+         LONGS.setRelease(buffer, 0, 0L);
+         owned.delete();
+      }
+      try {
+         Runtime.getRuntime().removeShutdownHook(closer);
+      }
+      catch(IllegalStateException e) {} //closing from the hook itself
+   }
+   /**
+    * One direction of the transport. Ring n keeps its tail, head and closed flag
+    * on their own cache lines in the header, and its bytes after the header.
+    */
+   private class Ring {
+      private int tail;
+      private int head;
+      private int closed;
+      private int data;
+      
+      private Ring(int n) {
+         this.tail = LINE * (1 + 3 * n);
+         this.head = tail + LINE;
+         this.closed = head + LINE;
+         this.data = DATA + n * CAPACITY;
+      }
+      /**
+       * Reads at least one byte, waiting for the writer if the ring is empty.
+       * @param b is where to put the bytes
+       * @param off is the first index of b to fill
+       * @param len is the most bytes to read
+       * @return the number of bytes read, or -1 if the writer has closed and the ring is empty
+       */
+      private int read(byte[] b, int off, int len) {
+         if(len == 0) {
+            return 0;
+         }
+         long readPos = (long)LONGS.getOpaque(buffer, head);
+         long available = waitFor(readPos);
+         if(available == 0) {
+            return -1;
+         }
+         int n = (int)Math.min(available, len);
+         for(int i = 0; i < n; i++) {
+            b[off + i] = buffer.get(data + (int)((readPos + i) & (CAPACITY - 1)));
+         }
+         LONGS.setRelease(buffer, head, readPos + n);
+         return n;
+      }
+      /**
+       * Waits until there is something to read or the writer has closed.
+       * @param readPos is the reader's position
+       * @return the number of bytes ready, 0 only if the writer has closed
+       */
+      private long waitFor(long readPos) {
+         for(int spins = 0; ; spins++) {
+            long available = (long)LONGS.getAcquire(buffer, tail) - readPos;
+            if(available > 0) {
+               return available;
+            }
+            if((long)LONGS.getAcquire(buffer, closed) != 0) {
+               //Check again in case the last bytes landed just before closing
+               return (long)LONGS.getAcquire(buffer, tail) - readPos;
+            }
+            pause(spins);
+         }
+      }
+      /**
+       * Writes all the bytes, waiting for the reader whenever the ring is full.
+       * @param b holds the bytes to write
+       * @param off is the first index of b to write
+       * @param len is the number of bytes to write
+       * @throws IOException if the ring has been closed
+       */
+      private void write(byte[] b, int off, int len) throws IOException {
+         if((long)LONGS.getAcquire(buffer, closed) != 0) {
+            throw new IOException("Transport closed");
+         }
+         long writePos = (long)LONGS.getOpaque(buffer, tail);
+         int written = 0;
+         for(int spins = 0; written < len; spins++) {
+            long space = CAPACITY - (writePos - (long)LONGS.getAcquire(buffer, head));
+            if(space == 0) {
+               pause(spins);
+               continue;
+            }
+            int n = (int)Math.min(space, len - written);
+            for(int i = 0; i < n; i++) {
+               buffer.put(data + (int)((writePos + i) & (CAPACITY - 1)), b[off + written + i]);
+            }
+            writePos += n;
+            written += n;
+            LONGS.setRelease(buffer, tail, writePos);
+            spins = 0;
+         }
+      }
+      private void close() {
+         LONGS.setRelease(buffer, closed, 1L);
+      }
+   }
+   private static void pause(int spins) {
+      if(spins < SPINS) {
+         Thread.onSpinWait();
+      }
+      else {
+         LockSupport.parkNanos(PARK_NANOS);
+      }
+   }
+}
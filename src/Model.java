@@ -23,6 +23,9 @@ public class Model {
    final static int WINDOW_SIZE = 5;
    final static int MAXIMUM_X = 80;
    final static int MAXIMUM_Y = 80;
+   //Size of the grid, which covers MAXIMUM_X and MAXIMUM_Y either side of the start
+   final static int WIDTH = 2 * MAXIMUM_X + 1;
+   final static int HEIGHT = 2 * MAXIMUM_Y + 1;
    
    
  //Definitions for the state
@@ -51,6 +54,27 @@ public class Model {
    final static char USE_DYNAMITE = 'B';
    final static char UNLOCK_DOOR = 'U';
    
+   //Random keys for hashing where we are, which way we face and what we hold. A state's
+   //hash is the keys of its parts XORed together, so a change only XORs out the old
+   //key and XORs in the new one.
+   private static final long[] LOCATION_KEYS;
+   private static final long[] DIRECTION_KEYS;
+   private static final long[] DYNAMITE_KEYS;
+   private static final long AXE_KEY;
+   private static final long KEY_KEY;
+   private static final long RAFT_KEY;
+   private static final long TREASURE_KEY;
+   static {
+      Random random = new Random(3411);
+      LOCATION_KEYS = randomKeys(random, WIDTH * HEIGHT);
+      DIRECTION_KEYS = randomKeys(random, 4);
+      DYNAMITE_KEYS = randomKeys(random, 64);
+      AXE_KEY = random.nextLong();
+      KEY_KEY = random.nextLong();
+      RAFT_KEY = random.nextLong();
+      TREASURE_KEY = random.nextLong();
+   }
+   
    private int xLoc;
    private int yLoc;
    private int direction;
@@ -62,9 +86,29 @@ public class Model {
    private boolean haveRaft;
    private boolean haveTreasure;
    private int numDynamites;
+   //Bumped whenever a tile or the inventory changes, so cached searches know when to recompute
+   private int version;
+   //The hash of where we are, which way we face and what we hold, kept up to date by updateMove
+   private long hash;
+   //Distances from landmarks for A*, and the version of the world they were measured on
+   private Landmarks landmarks;
+   private int landmarksVersion;
+   //Whether a snapshot may still be reading the landmarks, so they can't go back to the pool
+   private boolean landmarksShared;
    
-   private Set<Point> visited;
+   //Tiles we have stood on, and the known tiles we have not, by index
+   private BitSet visited;
+   private BitSet unvisitedKnown;
+   //The tiles themselves, and a Map view of them for code that looks tiles up by Point
+   private TileGrid tiles;
    private Map<Point, Character> world;
+   //For every tile, how many unknown and water tiles its 5x5 view covers. Kept up to date by setTile
+   private IntGrid unknownInView;
+   private IntGrid waterInView;
+   //Steps from every tile back home, kept up to date by setTile
+   private HomeField homeField;
+   //Open tiles that only lead back the way they were entered, kept up to date by setTile
+   private DeadEnds deadEnds;
    //We need to keep an eye on what we're standing on because the map thinks we're on a ^
    private char currentTerrain;
    
@@ -96,9 +140,14 @@ public class Model {
       this.haveRaft = false;
       this.haveTreasure = false;
       this.numDynamites = 0;  
+      this.version = 0;
+      this.hash = LOCATION_KEYS[index(0, 0)] ^ DIRECTION_KEYS[DOWN] ^ DYNAMITE_KEYS[0];
       
-      this.visited = new HashSet<Point>();
-      this.world = new HashMap<>();
+      this.visited = new BitSet(WIDTH * HEIGHT);
+      this.unvisitedKnown = new BitSet(WIDTH * HEIGHT);
+      //Pre-fill the world with UNEXPLORED;
+      this.tiles = TileGrid.allocate(UNEXPLORED);
+      this.world = new WorldView();
       this.currentTerrain = ' ';
       
       this.axes = new LinkedList<Point>();
@@ -116,13 +165,232 @@ public class Model {
       //We might start at the bottom which means that we can go MAXIMUM_Y Upwards...
       //But we might also start at the top which means we can go MAXIMUM_Y Downwards...
       //So we should just have MAXIMUM_Y in both directions. And the same for the x axis.
+      this.unknownInView = IntGrid.allocate(WIDTH * HEIGHT, 0);
+      this.waterInView = IntGrid.allocate(WIDTH * HEIGHT, 0);
+      this.homeField = new HomeField(this);
+      this.deadEnds = new DeadEnds(this);
       for(int x = -MAXIMUM_X; x <= MAXIMUM_X; x++) {
          for(int y = -MAXIMUM_Y; y <= MAXIMUM_Y; y++) {
-            //Pre-fill the world with UNEXPLORED;
-            this.world.put(new Point(x,y), UNEXPLORED);
+            addToViews(unknownInView, new Point(x,y), 1);
+         }
+      }
+   }
+   /**
+    * The world as a Map from Point to tile, backed by the tile grid. Points off
+    * the grid map to null, as they did when the world was a HashMap.
+    */
+   private class WorldView extends AbstractMap<Point, Character> {
+      @Override
+      public Character get(Object key) {
+         if(!(key instanceof Point)) {
+            return null;
+         }
+         Point p = (Point)key;
+         if(!inBounds(p.x, p.y)) {
+            return null;
+         }
+         return tiles.get(index(p.x, p.y));
+      }
+      @Override
+      public boolean containsKey(Object key) {
+         return get(key) != null;
+      }
+      @Override
+      public Character put(Point key, Character value) {
+         Character old = get(key);
+         if(old == null) {
+            throw new IllegalArgumentException("Tile off the grid: " + key);
+         }
+         setTile(key, value);
+         return old;
+      }
+      @Override
+      public int size() {
+         return WIDTH * HEIGHT;
+      }
+      @Override
+      public Set<Map.Entry<Point, Character>> entrySet() {
+         return new AbstractSet<Map.Entry<Point, Character>>() {
+            @Override
+            public int size() {
+               return WIDTH * HEIGHT;
+            }
+            @Override
+            public Iterator<Map.Entry<Point, Character>> iterator() {
+               return new Iterator<Map.Entry<Point, Character>>() {
+                  private int next = 0;
+                  
+                  @Override
+                  public boolean hasNext() {
+                     return next < WIDTH * HEIGHT;
+                  }
+                  @Override
+                  public Map.Entry<Point, Character> next() {
+                     if(!hasNext()) {
+                        throw new NoSuchElementException();
+                     }
+                     Point p = new Point(next % WIDTH - MAXIMUM_X, next / WIDTH - MAXIMUM_Y);
+                     char tile = tiles.get(next);
+                     next++;
+                     return new AbstractMap.SimpleImmutableEntry<Point, Character>(p, tile);
+                  }
+               };
+            }
+         };
+      }
+   }
+   /**
+    * Whether a tile lies on the model's grid.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return whether the tile is on the grid
+    */
+   public static boolean inBounds(int x, int y) {
+      return (x >= -MAXIMUM_X && x <= MAXIMUM_X && y >= -MAXIMUM_Y && y <= MAXIMUM_Y);
+   }
+   /**
+    * Gives the position of a tile in arrays that cover the whole grid, row by row.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return the index of the tile
+    */
+   public static int index(int x, int y) {
+      return (y + MAXIMUM_Y) * WIDTH + (x + MAXIMUM_X);
+   }
+   /**
+    * Gives the known tiles not yet visited that pass a test, in the order
+    * exploration looks at them: nearest to the given tile by Manhattan distance
+    * first, and tiles equally far in grid order.
+    * @param water is whether to give only water tiles, rather than those we can move onto
+    * @param from is the tile distances are measured from
+    * @return the indexes of the tiles
+    */
+   private int[] explorationCandidates(boolean water, Point from) {
+      long[] ranked = new long[unvisitedKnown.cardinality()];
+      int count = 0;
+      for(int i = unvisitedKnown.nextSetBit(0); i >= 0; i = unvisitedKnown.nextSetBit(i + 1)) {
+         char tile = tiles.get(i);
+         if(water ? tile == WATER : canPotentiallyMoveOntoTile(tile, this.haveAxe, this.haveKey, this.haveRaft)) {
+            int distance = Math.abs(i % WIDTH - MAXIMUM_X - from.x) + Math.abs(i / WIDTH - MAXIMUM_Y - from.y);
+            ranked[count++] = ((long)distance << 32) | i;
+         }
+      }
+      Arrays.sort(ranked, 0, count);
+      int[] candidates = new int[count];
+      for(int i = 0; i < count; i++) {
+         candidates[i] = (int)ranked[i];
+      }
+      return candidates;
+   }
+   /**
+    * Floods out from a tile over every tile we could move onto with the tools we
+    * hold. A* never reaches a tile the flood doesn't, so the flood tells which
+    * searches would fail without running them.
+    * @param from is the tile to flood from
+    * @param waterOnly is whether to keep to water, as A* does between two water tiles
+    * @return the tiles reached, by index
+    */
+   private BitSet reachableFrom(Point from, boolean waterOnly) {
+      BitSet reached = new BitSet(WIDTH * HEIGHT);
+      int[] queue = new int[WIDTH * HEIGHT];
+      int head = 0;
+      int tail = 0;
+      reached.set(index(from.x, from.y));
+      queue[tail++] = index(from.x, from.y);
+      while(head < tail) {
+         int curr = queue[head++];
+         int x = curr % WIDTH - MAXIMUM_X;
+         int y = curr / WIDTH - MAXIMUM_Y;
+         for(int i = 0; i < 4; i++) {
+            int nextX = x + Movement.DX[i];
+            int nextY = y + Movement.DY[i];
+            if(!inBounds(nextX, nextY) || reached.get(index(nextX, nextY))) {
+               continue;
+            }
+            char tile = tiles.get(index(nextX, nextY));
+            if(waterOnly && tile != WATER) {
+               continue;
+            }
+            if(canPotentiallyMoveOntoTile(tile, this.haveAxe, this.haveKey, this.haveRaft)) {
+               reached.set(index(nextX, nextY));
+               queue[tail++] = index(nextX, nextY);
+            }
+         }
+      }
+      SearchStats.addExpanded(head);
+      return reached;
+   }
+   /**
+    * Gives the first of the candidates A* can reach. Once a search fails, the
+    * tiles flooded from where we stand show which other searches would fail, and
+    * those are skipped. Between two water tiles A* keeps to water, so water
+    * tiles get a flood of their own that does too when we stand on water.
+    * @param curr is where we stand
+    * @param candidates are the indexes of the tiles, in the order to try them
+    * @return the first tile reached, or null if none is
+    */
+   private Point firstReachable(Point curr, int[] candidates) {
+      boolean onWater = tileAt(curr.x, curr.y) == WATER;
+      BitSet reach = null;
+      BitSet waterReach = null;
+      for(int i : candidates) {
+         boolean waterOnly = onWater && tiles.get(i) == WATER;
+         BitSet flood = waterOnly ? waterReach : reach;
+         if(flood != null && !flood.get(i)) {
+            continue;
+         }
+         Point p = new Point(i % WIDTH - MAXIMUM_X, i / WIDTH - MAXIMUM_Y);
+         AStarSearch a = new AStarSearch(this.world, curr, p, getLandmarks(), deadEnds);
+         a.aStar(this.haveAxe, this.haveKey, this.haveRaft);
+         if(a.reachable()) {
+            return p;
+         }
+         if(flood == null) {
+            if(waterOnly) {
+               waterReach = reachableFrom(curr, true);
+            }
+            else {
+               reach = reachableFrom(curr, false);
+            }
+         }
+      }
+      return null;
+   }
+   /**
+    * A copy of the lists of item locations, so that changes made while planning
+    * can be undone if the plan is thrown away.
+    */
+   public static class Goals {
+      private List<LinkedList<Point>> lists;
+      
+      private Goals(List<LinkedList<Point>> lists) {
+         this.lists = new ArrayList<LinkedList<Point>>();
+         for(LinkedList<Point> list : lists) {
+            this.lists.add(new LinkedList<Point>(list));
          }
       }
    }
+   /**
+    * Takes a copy of the lists of item locations.
+    * @return the copy, to be given to restoreGoals
+    */
+   public Goals saveGoals() {
+      return new Goals(goalLists());
+   }
+   /**
+    * Puts the lists of item locations back to how they were when saved.
+    * @param saved is the copy given by saveGoals
+    */
+   public void restoreGoals(Goals saved) {
+      List<LinkedList<Point>> lists = goalLists();
+      for(int i = 0; i < lists.size(); i++) {
+         lists.get(i).clear();
+         lists.get(i).addAll(saved.lists.get(i));
+      }
+   }
+   private List<LinkedList<Point>> goalLists() {
+      return Arrays.asList(axes, dynamites, keys, trees, doors, axesSeen, dynamitesSeen, keysSeen, treesSeen, doorsSeen);
+   }
    //A massive amount of getters
    public boolean haveAxe() {
       return haveAxe;
@@ -142,6 +410,61 @@ public class Model {
    public Map<Point, Character> getWorld() {
       return world;
    }
+   public int getVersion() {
+      return version;
+   }
+   /**
+    * Gives a hash of where we are, which way we face, what we hold and the
+    * version of the world. If it is the same as at an earlier decision, nothing
+    * has changed in between that planning could tell apart.
+    * @return the hash
+    */
+   public long stateHash() {
+      //Spread the version over every bit, as consecutive versions differ only in the low ones
+      long v = version * 0x9e3779b97f4a7c15L;
+      return hash ^ v ^ (v >>> 29);
+   }
+   private static long[] randomKeys(Random random, int n) {
+      long[] keys = new long[n];
+      for(int i = 0; i < n; i++) {
+         keys[i] = random.nextLong();
+      }
+      return keys;
+   }
+   /**
+    * Gives a cheapest way home from where we are with the tools we hold, chopping
+    * as few trees as it can before taking as few steps as it can.
+    * @param path is the buffer to add the path to, not including where we are
+    * @return whether there is a known way home
+    */
+   public boolean pathHome(PathBuffer path) {
+      return homeField.pathFrom(getLoc(), direction, path);
+   }
+   /**
+    * Gives the landmark distances for the world as it is now, measuring them
+    * again only if the world or what we hold has changed since they were last used.
+    * @return the landmark distances
+    */
+   public Landmarks getLandmarks() {
+      if(landmarks == null || landmarksVersion != version) {
+         if(landmarks != null && !landmarksShared) {
+            landmarks.release();
+         }
+         //Dropped first, so a measurement cancelled part way never leaves the released ones in use
+         landmarks = null;
+         landmarks = new Landmarks(this);
+         landmarksVersion = version;
+         landmarksShared = false;
+      }
+      return landmarks;
+   }
+   /**
+    * Gives the dead ends of the known map for the tools we hold, for A* to skip.
+    * @return the dead ends
+    */
+   public DeadEnds getDeadEnds() {
+      return deadEnds;
+   }
    public Point getLoc() {
       return new Point(xLoc, yLoc);
    }
@@ -193,83 +516,277 @@ public class Model {
    public char getCurrentTerrain() {
       return this.currentTerrain;
    }
+   public boolean hasVisited(Point p) {
+      return inBounds(p.x, p.y) && this.visited.get(index(p.x, p.y));
+   }
+   public int unknownInView(int x, int y) {
+      return inBounds(x, y) ? unknownInView.get(index(x, y)) : 0;
+   }
+   public int waterInView(int x, int y) {
+      return inBounds(x, y) ? waterInView.get(index(x, y)) : 0;
+   }
+   /**
+    * Gives the tile at the given coordinates without going through a Point.
+    * @param x is the x coordinate of the tile
+    * @param y is the y coordinate of the tile
+    * @return the tile, or UNEXPLORED if it is off the grid
+    */
+   public char tileAt(int x, int y) {
+      return inBounds(x, y) ? tiles.get(index(x, y)) : UNEXPLORED;
+   }
    /**
     * Updates the information stored in model based on the information given in the 5x5 view.
     * @param view is what the AI can 'see' at the current turn
     */
    public void update(char view[][]) {
-      //We need to rotate the view we're given so that it's the same orientation as our original map.
-      int rotationsRequired = 0;
-      
-      switch(this.direction) {
-         case UP:
+      long allocationMark = AllocationProfile.start();
+      view = orientView(view);
+      for(int i = 0; i < WINDOW_SIZE; i++) {
+         for(int j = 0; j < WINDOW_SIZE; j++) {
+            char currTile = view[i][j];
+            int currX = xLoc + (j-2);
+            int currY = yLoc + (2-i);
+            //The middle of the view is the agent itself, the tile under it is set below
+            if(i == 2 && j == 2) {
+               continue;
+            }
+
+            Point tile = new Point(currX, currY);
+            noteItem(tile, new Point(xLoc, yLoc), currTile);
+            setTile(tile, currTile);
+            visited.set(index(xLoc, yLoc));
+            unvisitedKnown.clear(index(xLoc, yLoc));
+         }
+      }
+      setTile(getLoc(), currentTerrain);
+      AllocationProfile.end(AllocationProfile.UPDATE, allocationMark);
+      //showMap();
+   }
+   /**
+    * Adds a tile to the list of locations of its kind of item, if it isn't there yet.
+    * @param tile is the tile seen
+    * @param curr is where we were when we saw it
+    * @param currTile is what the tile holds
+    */
+   private void noteItem(Point tile, Point curr, char currTile) {
+      switch(currTile) {
+         case AXE:
+            if(!this.axes.contains(tile)) {
+               this.axes.add(tile);
+               this.axesSeen.add(curr);
+            }
+            break;
+         case DYNAMITE:
+            if(!this.dynamites.contains(tile)) {
+               this.dynamites.add(tile);
+               this.dynamitesSeen.add(curr);
+            }
             break;
-         case RIGHT:
-            rotationsRequired = 1;
+         case TREASURE:
+            this.treasureVisible = true;
+            this.treasureLoc = tile;
+            this.treasureSeen = curr;
             break;
-         case DOWN:
-            rotationsRequired = 2;
+         case KEY:
+            if(!this.keys.contains(tile)) {
+               this.keys.add(tile);
+               this.keysSeen.add(curr);
+            }
             break;
-         case LEFT:
-            rotationsRequired = 3;
+         case TREE:
+            if(!this.trees.contains(tile)) {
+               this.trees.add(tile);
+               this.treesSeen.add(curr);
+            }
+            break;
+         case DOOR:
+            if(!this.doors.contains(tile)) {
+               this.doors.add(tile);
+               this.doorsSeen.add(curr);
+            }
             break;
-
       }
-      for(int i = 0; i < rotationsRequired; i++) {
-         view = rotateMap(view);
+   }
+   /**
+    * Creates a model of a world that is known in full, for judging plans on a
+    * made up completion of the map. Every item is listed as seen from where we stand.
+    * @param known holds every tile by index, with UNEXPLORED for any that are not part of the world
+    * @param x is the x coordinate we stand on
+    * @param y is the y coordinate we stand on
+    * @param direction is the direction we face
+    * @param haveAxe is whether we hold an axe
+    * @param haveKey is whether we hold a key
+    * @param haveRaft is whether we hold a raft
+    * @param haveTreasure is whether we hold the treasure
+    * @param numDynamites is how many dynamites we hold
+    * @return the model
+    */
+   static Model known(char[] known, int x, int y, int direction, boolean haveAxe, boolean haveKey,
+         boolean haveRaft, boolean haveTreasure, int numDynamites) {
+      Model model = new Model();
+      Point curr = new Point(x, y);
+      for(int i = 0; i < known.length; i++) {
+         if(known[i] == UNEXPLORED) {
+            continue;
+         }
+         Point tile = new Point(i % WIDTH - MAXIMUM_X, i / WIDTH - MAXIMUM_Y);
+         model.noteItem(tile, curr, known[i]);
+         model.setTile(tile, known[i]);
+      }
+      model.xLoc = x;
+      model.yLoc = y;
+      model.direction = direction;
+      model.currentTerrain = model.tileAt(x, y);
+      model.visited.set(index(x, y));
+      model.unvisitedKnown.clear(index(x, y));
+      model.haveAxe = haveAxe;
+      model.haveKey = haveKey;
+      model.haveRaft = haveRaft;
+      model.haveTreasure = haveTreasure;
+      model.numDynamites = numDynamites;
+      model.hash = LOCATION_KEYS[index(x, y)] ^ DIRECTION_KEYS[direction] ^ DYNAMITE_KEYS[numDynamites & 63]
+            ^ (haveAxe ? AXE_KEY : 0) ^ (haveKey ? KEY_KEY : 0) ^ (haveRaft ? RAFT_KEY : 0)
+            ^ (haveTreasure ? TREASURE_KEY : 0);
+      model.version++;
+      return model;
+   }
+   /**
+    * Gives a copy of the model that can be planned on without touching this one.
+    * The distances home and the dead ends are measured again when the copy first
+    * needs them, while the landmark distances, which never change once made, are shared
+    * and so are left to the garbage collector rather than given back to the pool.
+    * @return the copy
+    */
+   public Model snapshot() {
+      Model copy = new Model();
+      for(int i = 0; i < WIDTH * HEIGHT; i++) {
+         copy.tiles.set(i, tiles.get(i));
+         copy.unknownInView.set(i, unknownInView.get(i));
+         copy.waterInView.set(i, waterInView.get(i));
+      }
+      copy.visited = (BitSet) visited.clone();
+      copy.unvisitedKnown = (BitSet) unvisitedKnown.clone();
+      copy.restoreGoals(saveGoals());
+      copy.xLoc = xLoc;
+      copy.yLoc = yLoc;
+      copy.direction = direction;
+      copy.currentTerrain = currentTerrain;
+      copy.treasureVisible = treasureVisible;
+      copy.treasureLoc = treasureLoc;
+      copy.treasureSeen = treasureSeen;
+      copy.haveAxe = haveAxe;
+      copy.haveKey = haveKey;
+      copy.haveRaft = haveRaft;
+      copy.haveTreasure = haveTreasure;
+      copy.numDynamites = numDynamites;
+      copy.version = version;
+      copy.hash = hash;
+      copy.landmarks = landmarks;
+      copy.landmarksVersion = landmarksVersion;
+      copy.landmarksShared = true;
+      landmarksShared = true;
+      return copy;
+   }
+   /**
+    * Changes a tile of the world, keeping the version and view counts up to date.
+    * @param tile is the tile to change
+    * @param newTile is what the tile now holds
+    */
+   private void setTile(Point tile, char newTile) {
+      if(!inBounds(tile.x, tile.y)) {
+         return;
       }
+      char oldTile = tiles.get(index(tile.x, tile.y));
+      if(oldTile == newTile) {
+         return;
+      }
+      tiles.set(index(tile.x, tile.y), newTile);
+      version++;
+      if(oldTile == UNEXPLORED && !visited.get(index(tile.x, tile.y))) {
+         unvisitedKnown.set(index(tile.x, tile.y));
+      }
+      homeField.tileChanged(tile.x, tile.y, oldTile, newTile);
+      deadEnds.tileChanged(tile.x, tile.y, oldTile, newTile);
+      if(oldTile == UNEXPLORED) {
+         addToViews(unknownInView, tile, -1);
+      }
+      if(oldTile == WATER) {
+         addToViews(waterInView, tile, -1);
+      }
+      if(newTile == WATER) {
+         addToViews(waterInView, tile, 1);
+      }
+   }
+   /**
+    * Adds to the count of every tile whose 5x5 view contains the given tile.
+    * @param counts is the grid of counts to add to
+    * @param tile is the tile that changed
+    * @param amount is how much to add
+    */
+   private static void addToViews(IntGrid counts, Point tile, int amount) {
+      int x = (int)tile.getX();
+      int y = (int)tile.getY();
+      for(int i = x - 2; i <= x + 2; i++) {
+         for(int j = y - 2; j <= y + 2; j++) {
+            if(inBounds(i, j)) {
+               counts.set(index(i, j), counts.get(index(i, j)) + amount);
+            }
+         }
+      }
+   }
+   /**
+    * Checks whether updating with the given view would leave the world as it is,
+    * i.e. the view shows nothing we did not already know.
+    * @param view is what the AI can 'see' at the current turn
+    * @return whether every tile in the view matches the world
+    */
+   public boolean viewMatchesWorld(char view[][]) {
+      view = orientView(view);
       for(int i = 0; i < WINDOW_SIZE; i++) {
          for(int j = 0; j < WINDOW_SIZE; j++) {
-            char currTile = view[i][j];
-            int currX = xLoc + (j-2);
-            int currY = yLoc + (2-i);
-
-            Point tile = new Point(currX, currY);
-            Point curr = new Point(xLoc, yLoc);
-            
-            switch(currTile) {
-               case AXE:
-                  if(!this.axes.contains(tile)) {
-                     this.axes.add(tile);
-                     this.axesSeen.add(curr);
-                  }
-                  break;
-               case DYNAMITE:
-                  if(!this.dynamites.contains(tile)) {
-                     this.dynamites.add(tile);
-                     this.dynamitesSeen.add(curr);
-                  }
-                  break;
-               case TREASURE:
-                  this.treasureVisible = true;
-                  this.treasureLoc = tile;
-                  this.treasureSeen = curr;
-                  break;
-               case KEY:
-                  if(!this.keys.contains(tile)) {
-                     this.keys.add(tile);
-                     this.keysSeen.add(curr);
-                  }
-                  break;
-               case TREE:
-                  if(!this.trees.contains(tile)) {
-                     this.trees.add(tile);
-                     this.treesSeen.add(curr);
-                  }
-                  break;
-               case DOOR:
-                  if(!this.doors.contains(tile)) {
-                     this.doors.add(tile);
-                     this.doorsSeen.add(curr);
-                  }
-                  break;
+            //The middle of the view is the agent itself
+            if(i == 2 && j == 2) {
+               continue;
+            }
+            Character known = world.get(new Point(xLoc + (j-2), yLoc + (2-i)));
+            if(known == null || known != view[i][j]) {
+               return false;
             }
-            this.world.put(tile, currTile);
-            visited.add(getLoc());
          }
       }
-      world.put(getLoc(), currentTerrain);
-      //showMap();
+      return true;
+   }
+   /**
+    * Gives the view the AI would see if nothing new were revealed, i.e. the known
+    * world around the agent, turned to face the way the agent is facing.
+    * @return the predicted 5x5 view
+    */
+   public char[][] predictView() {
+      char[][] view = new char[WINDOW_SIZE][WINDOW_SIZE];
+      for(int i = 0; i < WINDOW_SIZE; i++) {
+         for(int j = 0; j < WINDOW_SIZE; j++) {
+            Character known = world.get(new Point(xLoc + (j-2), yLoc + (2-i)));
+            view[i][j] = (known == null) ? UNEXPLORED : known;
+         }
+      }
+      //orientView turns the view clockwise once per quarter turn, so turn it the rest of the way round
+      for(int i = 0; i < (4 - this.direction) % 4; i++) {
+         view = rotateMap(view);
+      }
+      return view;
+   }
+   /**
+    * Rotates the view we're given so that it's the same orientation as our original map.
+    * @param view is the 5x5 view seen by the AI
+    * @return the view facing up
+    */
+   private char[][] orientView(char view[][]) {
+      //Each clockwise quarter turn from UP needs one more rotation
+      int rotationsRequired = this.direction;
+      for(int i = 0; i < rotationsRequired; i++) {
+         view = rotateMap(view);
+      }
+      return view;
    }
    /**
     * Rotates the given 2d array map such that it matches the orientation of our original map
@@ -298,111 +815,93 @@ public class Model {
       switch(move) {
       //Right turn
          case 'R':
-            switch (this.direction) {
-               case UP:
-                  direction = RIGHT;
-                  break;
-               case RIGHT:
-                  direction = DOWN;
-                  break;
-               case DOWN:
-                  direction = LEFT;
-                  break;
-               case LEFT:
-                  direction = UP;
-                  break;
-            }
+            hash ^= DIRECTION_KEYS[direction] ^ DIRECTION_KEYS[Movement.RIGHT_OF[direction]];
+            direction = Movement.RIGHT_OF[direction];
             break;
          //Left Turn
          case 'L':
-            switch (this.direction) {
-               case UP:
-                  direction = LEFT;
-                  break;
-               case RIGHT:
-                  direction = UP;
-                  break;
-               case DOWN:
-                  direction = RIGHT;
-                  break;
-               case LEFT:
-                  direction = DOWN;
-                  break;
-            }
+            hash ^= DIRECTION_KEYS[direction] ^ DIRECTION_KEYS[Movement.LEFT_OF[direction]];
+            direction = Movement.LEFT_OF[direction];
             break;
          case 'F':
            if((frontTile == WALL) || (frontTile == DOOR) || (frontTile == TREE)) {
               break;
            }
            if((this.currentTerrain == WATER) && (canMoveOntoTile(frontTile))){
+              if(haveRaft) {
+                 hash ^= RAFT_KEY;
+              }
               this.haveRaft = false;
+              version++;
            }
            if (frontTile == AXE) {
+              if(!haveAxe) {
+                 hash ^= AXE_KEY;
+              }
               haveAxe = true;
+              version++;
            }
            else if (frontTile == KEY) {
+              if(!haveKey) {
+                 hash ^= KEY_KEY;
+              }
               haveKey = true;
+              version++;
            }
            else if (frontTile == DYNAMITE) {
+              hash ^= DYNAMITE_KEYS[numDynamites & 63] ^ DYNAMITE_KEYS[(numDynamites + 1) & 63];
               numDynamites += 1;
+              version++;
            }
            else if (frontTile == TREASURE) {
+              if(!haveTreasure) {
+                 hash ^= TREASURE_KEY;
+              }
               haveTreasure = true;
+              version++;
            }
-           switch(this.direction) {
-              case UP:
-                 yLoc += 1;
-                 break;
-              case RIGHT:
-                 xLoc += 1;
-                 break;
-              case DOWN:
-                 yLoc -= 1;
-                 break;
-              case LEFT:
-                 xLoc -= 1;
-                 break;
-           }
+           hash ^= LOCATION_KEYS[index(xLoc, yLoc)];
+           xLoc += Movement.DX[direction];
+           yLoc += Movement.DY[direction];
+           hash ^= LOCATION_KEYS[index(xLoc, yLoc)];
            this.currentTerrain = world.get(getLoc());
          case 'C':
             if(frontTile == TREE) {
                this.trees.remove(frontTile(currTile));
+               if(!haveRaft) {
+                  hash ^= RAFT_KEY;
+               }
                this.haveRaft = true;
+               version++;
             }
             break;
          case 'U':
             this.doors.remove(frontTile(currTile));
             break;
          case 'B':
-            world.put(frontTile(currTile), PLAIN);
+            setTile(frontTile(currTile), PLAIN);
+            hash ^= DYNAMITE_KEYS[numDynamites & 63] ^ DYNAMITE_KEYS[(numDynamites - 1) & 63];
             numDynamites -= 1;
+            version++;
             break;
       }
    }
+   /**
+    * Gets the tile next to the given tile in the given direction
+    * @param tile is the tile we want the neighbour of
+    * @param direction is the direction of the neighbour
+    * @return the neighbouring tile
+    */
+   public static Point neighbour(Point tile, int direction) {
+      return new Point((int) tile.getX() + Movement.DX[direction], (int) tile.getY() + Movement.DY[direction]);
+   }
    /**
     * Gets the tile in front of the given tile in the appropriate direction
     * @param tile is the tile we want the tile in front of of
     * @return the tile in front of the given tile
     */
    public Point frontTile(Point tile) {
-      int x = (int) tile.getX();
-      int y = (int) tile.getY();
-      
-      switch(this.direction) {
-         case UP:
-            y += 1;
-            break;
-         case RIGHT:
-            x += 1;
-            break;
-         case DOWN:
-            y -= 1;
-            break;
-         case LEFT:
-            x -= 1;
-            break;
-      }
-      return new Point(x,y);
+      return neighbour(tile, this.direction);
    }
    /**
     * Tiles we can move onto without any tools.
@@ -447,82 +946,16 @@ public class Model {
             (tile == TREE));
    }
    /**
-    * Finds the nearest point to the given point that can be moved to without the usage of dynamite.
-    * Used to find the most efficient spot to start dynamiting from (since there are less obstacles)
-    * @param p the point to be traveled to
-    * @return the nearest point to the given point which can be reached without dynamite
-    */
-   public Point nearestPointLeastObstaclesSurrounding(Point p) {
-      int[] obstacles = new int[4];
-      for(int i = 0; i < 4; i++) {
-         int x = (int)p.getX();
-         int y = (int)p.getY();
-         switch(i) {
-            case UP:
-               y += 1;
-               break;
-            case RIGHT:
-               x += 1;
-               break;
-            case DOWN:
-               y -= 1;
-               break;
-            case LEFT:
-               x -= 1;
-               break;
-         }
-         Point next = new Point(x,y);
-         boolean passable = false;
-         while(!passable) {
-            if(canBeBlownUp(world.get(next))) {
-               obstacles[i] ++;
-            }
-            else {
-               passable = true;
-            }
-         }
-      }
-      int smallest = obstacles[0];
-      for(int i : obstacles) {
-         if(i < smallest) {
-            i = smallest;
-         }
-      }
-      int x = (int)p.getX();
-      int y = (int)p.getY();
-      switch(smallest) {
-         case UP:
-            y += 1;
-            break;
-         case RIGHT:
-            x += 1;
-            break;
-         case DOWN:
-            y -= 1;
-            break;
-         case LEFT:
-            x -= 1;
-            break;
-      }
-      return new Point(x,y);
-   }
-   /**
-    * Gives the next tile that should be explored when exploring.
+    * Gives the next tile that should be explored when exploring: of the known
+    * tiles not yet visited that A* can reach, the nearest by Manhattan distance,
+    * and of those equally near, the first in grid order.
     * @param curr the current location of the AI
     * @return the next point that should be explored
     */
    public Point nearestReachableRevealingTile(Point curr) {
       HashMap<Integer, Point> distances = new HashMap<>();
-      for(Point p : this.world.keySet()) {
-         if(!visited.contains(p) && world.get(p) != UNEXPLORED && canPotentiallyMoveOntoTile(world.get(p), this.haveAxe, this.haveKey, this.haveRaft)) {
-            AStarSearch a = new AStarSearch(this.world, curr, p);
-            a.aStar(this.haveAxe, this.haveKey, this.haveRaft);
-            if(a.reachable()) {
-               return p;
-            }
-         }
-      }
-      return null;
+      //Only the known tiles not yet visited can be picked, nearest first
+      return firstReachable(curr, explorationCandidates(false, curr));
    }
           
  /*     Alternate method. Slower on real time, but more efficient on moves.         
@@ -545,22 +978,14 @@ public class Model {
       }
    }*/
   /**
-    * Gives the next tile that should be explored when exploring water.
+    * Gives the next tile that should be explored when exploring water, picked
+    * as for nearestReachableRevealingTile from the water tiles not yet visited.
     * @param curr the current location of the AI
     * @return the next point that should be explored
    */
    public Point nearestReachableRevealingWaterTile(Point curr) {
       HashMap<Integer, Point> distances = new HashMap<>();
-      for(Point p : this.world.keySet()) {
-         if(!visited.contains(p) && world.get(p) == WATER) {
-            AStarSearch a = new AStarSearch(this.world, curr, p);
-            a.aStar(this.haveAxe, this.haveKey, this.haveRaft);
-            if(a.reachable()) {
-               return p;
-            }
-         }
-      }
-      return null;
+      return firstReachable(curr, explorationCandidates(true, curr));
    }
                
                /*distances.put(manhattanDistance(curr, p), p);
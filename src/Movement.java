@@ -0,0 +1,82 @@
+/**
+ * Lookup tables for moving around the grid, so that the rest of the code can
+ * work out directions, neighbours and turns with an array lookup rather than a
+ * switch on the direction. Directions are numbered as in Model: UP = 0,
+ * RIGHT = 1, DOWN = 2, LEFT = 3, so adding one is a clockwise quarter turn.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public final class Movement {
+   
+   //The change in x and y from moving one tile in each direction
+   static final int[] DX = { 0, 1, 0, -1 };
+   static final int[] DY = { 1, 0, -1, 0 };
+   
+   //The direction faced after turning right or left from each direction
+   static final int[] RIGHT_OF = { 1, 2, 3, 0 };
+   static final int[] LEFT_OF = { 3, 0, 1, 2 };
+   
+   //TURNS[from][to] is the shortest list of turns from facing one direction to facing another
+   static final char[][][] TURNS = new char[4][4][];
+   
+   //The direction of a one tile step, indexed by (dy + 1) * 3 + (dx + 1). -1 for anything else.
+   private static final int[] STEP_DIRECTION = { -1, Model.DOWN, -1, Model.LEFT, -1, Model.RIGHT, -1, Model.UP, -1 };
+   
+   static {
+      for(int from = 0; from < 4; from++) {
+         for(int to = 0; to < 4; to++) {
+            //Clockwise turns needed, 3 of which is just a single left turn
+            switch((to - from + 4) % 4) {
+               case 0:
+                  TURNS[from][to] = new char[0];
+                  break;
+               case 1:
+                  TURNS[from][to] = new char[] { Model.TURN_RIGHT };
+                  break;
+               case 2:
+                  //Either way round works, so turn whichever way keeps the direction counting up or down
+                  char turn = (to > from) ? Model.TURN_RIGHT : Model.TURN_LEFT;
+                  TURNS[from][to] = new char[] { turn, turn };
+                  break;
+               case 3:
+                  TURNS[from][to] = new char[] { Model.TURN_LEFT };
+                  break;
+            }
+         }
+      }
+   }
+   
+   private Movement() {
+   }
+   /**
+    * Gives the direction of a step from one tile to a neighbouring tile.
+    * @param fromX is the x coordinate of the tile stepped from
+    * @param fromY is the y coordinate of the tile stepped from
+    * @param toX is the x coordinate of the tile stepped to
+    * @param toY is the y coordinate of the tile stepped to
+    * @return the direction, or -1 if the tiles are not neighbours
+    */
+   static int direction(int fromX, int fromY, int toX, int toY) {
+      int dx = toX - fromX;
+      int dy = toY - fromY;
+      if(dx < -1 || dx > 1 || dy < -1 || dy > 1) {
+         return -1;
+      }
+      return STEP_DIRECTION[(dy + 1) * 3 + (dx + 1)];
+   }
+   /**
+    * Gives the direction faced after a move.
+    * @param direction is the direction faced before the move
+    * @param move is the move made
+    * @return the new direction, which only changes for turns
+    */
+   static int turn(int direction, char move) {
+      if(move == Model.TURN_RIGHT) {
+         return RIGHT_OF[direction];
+      }
+      if(move == Model.TURN_LEFT) {
+         return LEFT_OF[direction];
+      }
+      return direction;
+   }
+}
@@ -0,0 +1,105 @@
+import java.util.*;
+
+/**
+ * This class is a hash table from packed search states to a long value, such
+ * as the state it was reached from. Search states are packed into a single
+ * non-negative long, so the table uses open addressing over two long arrays
+ * rather than a HashMap, which would box every key and value and allocate a
+ * node per entry.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class PackedStateTable {
+   
+   private static long EMPTY = -1L;
+   
+   private long[] keys;
+   private long[] values;
+   private int size;
+   
+   public PackedStateTable(int expectedSize) {
+      int capacity = 16;
+      while(capacity < expectedSize * 2) {
+         capacity <<= 1;
+      }
+      this.keys = new long[capacity];
+      this.values = new long[capacity];
+      Arrays.fill(keys, EMPTY);
+      this.size = 0;
+   }
+   public int size() {
+      return this.size;
+   }
+   /**
+    * Checks whether the table holds the given state.
+    * @param key is the packed state, which must not be negative
+    * @return whether the state is in the table
+    */
+   public boolean contains(long key) {
+      return keys[slot(key)] == key;
+   }
+   /**
+    * Gives the value stored for the given state.
+    * @param key is the packed state, which must not be negative
+    * @return the value stored, or -1 if the state is not in the table
+    */
+   public long get(long key) {
+      int slot = slot(key);
+      if(keys[slot] != key) {
+         return EMPTY;
+      }
+      return values[slot];
+   }
+   /**
+    * Stores a value for a state that is not yet in the table.
+    * @param key is the packed state, which must not be negative
+    * @param value is the value to store
+    * @return false if the state was already in the table, in which case nothing is changed
+    */
+   public boolean putIfAbsent(long key, long value) {
+      int slot = slot(key);
+      if(keys[slot] == key) {
+         return false;
+      }
+      keys[slot] = key;
+      values[slot] = value;
+      size++;
+      if(size * 2 > keys.length) {
+         grow();
+      }
+      return true;
+   }
+   /**
+    * Finds the slot holding the key, or the empty slot where it would go.
+    * @param key is the packed state
+    * @return the index of the slot
+    */
+   private int slot(long key) {
+      int mask = keys.length - 1;
+      int slot = (int)(mix(key) & mask);
+      while(keys[slot] != EMPTY && keys[slot] != key) {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+   private void grow() {
+      long[] oldKeys = keys;
+      long[] oldValues = values;
+      keys = new long[oldKeys.length * 2];
+      values = new long[oldValues.length * 2];
+      Arrays.fill(keys, EMPTY);
+      for(int i = 0; i < oldKeys.length; i++) {
+         if(oldKeys[i] != EMPTY) {
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+         }
+      }
+   }
+   private static long mix(long key) {
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      return key;
+   }
+}
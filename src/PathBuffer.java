@@ -0,0 +1,71 @@
+/**
+ * A path across the map kept as an int array of tile indices, as given by
+ * Model.index. The searches append to a buffer handed to them rather than
+ * building a list of Points, so a buffer kept by the caller can be cleared and
+ * filled again for every plan without making any garbage.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class PathBuffer {
+   
+   private int[] tiles;
+   private int size;
+   
+   public PathBuffer() {
+      this.tiles = new int[256];
+      this.size = 0;
+   }
+   public boolean isEmpty() {
+      return size == 0;
+   }
+   public int size() {
+      return size;
+   }
+   public void clear() {
+      size = 0;
+   }
+   /**
+    * Adds a tile to the end of the path.
+    * @param tile is the index of the tile, as given by Model.index
+    */
+   public void add(int tile) {
+      if(size == tiles.length) {
+         int[] grown = new int[tiles.length * 2];
+         System.arraycopy(tiles, 0, grown, 0, size);
+         tiles = grown;
+      }
+      tiles[size++] = tile;
+   }
+   /**
+    * Reverses the end of the path, for searches that walk back from the goal.
+    * @param from is the position of the first tile to reverse
+    */
+   public void reverseFrom(int from) {
+      for(int i = from, j = size - 1; i < j; i++, j--) {
+         int tile = tiles[i];
+         tiles[i] = tiles[j];
+         tiles[j] = tile;
+      }
+   }
+   /**
+    * @param i is the position along the path
+    * @return the index of the tile at that position
+    */
+   public int tile(int i) {
+      return tiles[i];
+   }
+   /**
+    * @param i is the position along the path
+    * @return the x coordinate of the tile at that position
+    */
+   public int x(int i) {
+      return tiles[i] % Model.WIDTH - Model.MAXIMUM_X;
+   }
+   /**
+    * @param i is the position along the path
+    * @return the y coordinate of the tile at that position
+    */
+   public int y(int i) {
+      return tiles[i] / Model.WIDTH - Model.MAXIMUM_Y;
+   }
+}
@@ -7,7 +7,6 @@
 
 import java.util.*;
 import java.io.*;
-import java.net.*;
 
 public class Raft {
 
@@ -16,6 +15,12 @@ public class Raft {
    final static int WEST   = 2;
    final static int SOUTH  = 3;
 
+   // batch protocol (-b): the agent sends a header byte then that many actions
+   final static int MAX_BATCH = 127;  // low 7 bits of the header count the actions
+   final static int ALL_VIEWS = 0x80; // top bit asks for a view after every action
+
+   final static int LOST = -1; // result of play() for a lost game
+
    private char[][] map;
    private char[][] view;
 
@@ -43,43 +48,44 @@ public class Raft {
    }
 
    private void read_map( String mapName ) {
+      try {
+         read_map( new BufferedReader(new FileReader(mapName)) );
+      }
+      catch( FileNotFoundException fnfe ) {
+         swanSong( "File Not Found: "+ mapName );
+      }
+      catch( IOException ioe ) {
+         swanSong( "IO Error" );
+      }
+   }
+
+   private void read_map( BufferedReader in ) throws IOException {
 
-      BufferedReader in;
       boolean agent_here;
-      char ch;
       int r,c;
 
       map = new char[1024][];
 
       r=-1;
-      try {
-         in = new BufferedReader(new FileReader(mapName));
-         String oneLine = in.readLine();
-         while(( oneLine != null )&&( oneLine.length() > 0 )) {
-            map[++r] = new char[oneLine.length()];
-            for( c=0; c < oneLine.length(); c++ ) {
-               map[r][c] = oneLine.charAt(c);
-               agent_here = true;
-               switch( map[r][c] ) {
-                case '^': dirn = NORTH; break;
-                case '>': dirn = EAST;  break;
-                case 'v': dirn = SOUTH; break;
-                case '<': dirn = WEST;  break;
-                default:  agent_here = false;
-               }
-               if( agent_here ) {
-                  row = r;
-                  col = c;
-               }
+      String oneLine = in.readLine();
+      while(( oneLine != null )&&( oneLine.length() > 0 )) {
+         map[++r] = new char[oneLine.length()];
+         for( c=0; c < oneLine.length(); c++ ) {
+            map[r][c] = oneLine.charAt(c);
+            agent_here = true;
+            switch( map[r][c] ) {
+             case '^': dirn = NORTH; break;
+             case '>': dirn = EAST;  break;
+             case 'v': dirn = SOUTH; break;
+             case '<': dirn = WEST;  break;
+             default:  agent_here = false;
+            }
+            if( agent_here ) {
+               row = r;
+               col = c;
             }
-            oneLine = in.readLine();
          }
-      }
-      catch( FileNotFoundException fnfe ) {
-         swanSong( "File Not Found: "+ mapName );
-      }
-      catch( IOException ioe ) {
-         swanSong( "IO Error" );
+         oneLine = in.readLine();
       }
 
       nrows = r+1; // number of rows
@@ -254,20 +260,34 @@ public class Raft {
       }
    }
 
+   private void send_view( OutputStream out ) throws IOException {
+      int i,j;
+
+      for( i=0; i < 5; i++ ) {
+         for( j=0; j < 5; j++ ) {
+            if( !(( i == 2 )&&( j == 2 ))) {
+               out.write( view[i][j] );
+            }
+         }
+      }
+   }
+
    private static void printUsage()
    {
       swanSong(
-        "Usage: java Raft [-p <port>] -i map [-m <maxmoves>] [-s]\n");
+        "Usage: java Raft [-p <port> | -f <file>] -i map [-m <maxmoves>] [-s] [-b]\n");
    }
 
    public static void main( String[] args )
    {
       Raft raft;
       boolean silent = false;
+      boolean batch  = false;
       String mapName = "";
       char action  = 'F';
       int maxmoves = 10000;
       int port = 0;
+      String file = null;
       int k,m;
 
       raft = new Raft();
@@ -291,6 +311,14 @@ public class Raft {
                printUsage();
             }
          }
+         else if( args[k].compareTo("-f") == 0 ) {
+            if( ++k < args.length ) {
+               file = args[k++];
+            }
+            else {
+               printUsage();
+            }
+         }
          else if( args[k].compareTo("-m") == 0 ) {
             if( ++k < args.length ) {
                maxmoves = Integer.parseInt(args[k++]);
@@ -303,6 +331,10 @@ public class Raft {
             silent = true;
             k++;
          }
+         else if( args[k].compareTo("-b") == 0 ) {
+            batch = true;
+            k++;
+         }
          else {
             printUsage();
          }
@@ -317,80 +349,205 @@ public class Raft {
          raft.print_map();
       }
 
-      if( port != 0 ) {
+      if(( port != 0 )||( file != null )) {
          InputStream in            = null;
          OutputStream out          = null;
-         ServerSocket serverSocket = null;
-         Socket clientSocket       = null;
-         int i,j;
+         Transport transport       = null;
+         int b,n;
+         boolean all_views;
 
          try {
-            serverSocket = new ServerSocket( port );
-            clientSocket = serverSocket.accept();
-            serverSocket.close();
-            in  = clientSocket.getInputStream();
-            out = clientSocket.getOutputStream();
+            if( file != null ) {
+               transport = MappedTransport.create( file );
+            }
+            else {
+               transport = SocketTransport.accept( port );
+            }
+            in  = new BufferedInputStream( transport.getInputStream() );
+            out = new BufferedOutputStream( transport.getOutputStream() );
          }
          catch( IOException e ) {
-            swanSong( "Could not listen on port: "+ port );
+            swanSong(( file != null ) ? e.getMessage() : "Could not listen on port: "+ port );
          }
 
          try {
-            for( m=1; m <= maxmoves; m++ ) {
-               raft.get_view();
-               for( i=0; i < 5; i++ ) {
-                   for( j=0; j < 5; j++ ) {
-                       if( !(( i == 2 )&&( j == 2 ))) {
-                          out.write( raft.view[i][j] );
-                       }
-                   }
-               }
-               out.flush();
-               action = (char) in.read();
-               if( !silent ) {
-                 System.out.println("action = "+ action );
-               }
-               raft.apply( action );
-               if( !silent ) {
-                  raft.print_map();
-               }
-               if( raft.game_won ) {
-                  swanSong( "Game Won in "+ m +" moves." );
+            raft.get_view();
+            raft.send_view( out );
+            out.flush();
+            m = 0;
+            while( true ) {
+               n = 1;
+               all_views = false;
+               if( batch ) {
+                  b = in.read();
+                  n = Math.max( b & MAX_BATCH, 1 );
+                  all_views = ( b & ALL_VIEWS ) != 0;
                }
-               else if( raft.game_lost ) {
-                  swanSong( "Game Lost." );
+               for( b=0; b < n; b++ ) {
+                  action = (char) in.read();
+                  if( !silent ) {
+                    System.out.println("action = "+ action );
+                  }
+                  raft.apply( action );
+                  m++;
+                  if( !silent ) {
+                     raft.print_map();
+                  }
+                  if( raft.game_won ) {
+                     swanSong( "Game Won in "+ m +" moves." );
+                  }
+                  else if( raft.game_lost ) {
+                     swanSong( "Game Lost." );
+                  }
+                  else if( m >= maxmoves ) {
+                     swanSong("Exceeded maximum of "+ maxmoves +" moves.\n");
+                  }
+                  if( all_views ||( b == n-1 )) {
+                     raft.get_view();
+                     raft.send_view( out );
+                  }
                }
+               out.flush();
             }
-            swanSong("Exceeded maximum of "+ maxmoves +" moves.\n");
          }
          catch( IOException e ) {
             swanSong("Lost connection to port: "+ port );
          }
          finally {
             try {
-                clientSocket.close();
+                transport.close();
             }
             catch( IOException e ) {}
          }
       }
       else {
-         Agent agent = new Agent();
-
-         for( m=1; m <= maxmoves; m++ ) {
-            raft.get_view();
-            action = agent.get_action( raft.view );
-            raft.apply( action );
-            if( !silent ) {
-               raft.print_map();
-            }
-            if( raft.game_won ) {
-               swanSong( "Game Won in "+ m +" moves." );
-            }
-            else if( raft.game_lost ) {
-               swanSong( "Game Lost." );
-            }
+         m = raft.play( new Agent(), maxmoves, silent );
+         if( m > 0 ) {
+            swanSong( "Game Won in "+ m +" moves." );
+         }
+         else if( m == LOST ) {
+            swanSong( "Game Lost." );
          }
          swanSong("Exceeded maximum of "+ maxmoves +" moves.");
       }
    }
+
+   /**
+    * Plays a whole game in this process against the given agent.
+    * @return the number of moves if the game was won, LOST if it was lost,
+    * or 0 if the agent ran out of moves
+    */
+   int play( Agent agent, int maxmoves, boolean silent )
+   {
+      for( int m=1; m <= maxmoves; m++ ) {
+         get_view();
+         apply( agent.get_action( view ));
+         if( !silent ) {
+            print_map();
+         }
+         if( game_won ) {
+            return m;
+         }
+         else if( game_lost ) {
+            return LOST;
+         }
+      }
+      return 0;
+   }
+
+   /**
+    * Loads a map and plays it silently against the given agent.
+    * @return the result, as for play
+    */
+   static int play( String mapName, Agent agent, int maxmoves )
+   {
+      Raft raft = new Raft();
+      raft.view = new char[5][5];
+      raft.read_map( mapName );
+      return raft.play( agent, maxmoves, true );
+   }
+
+   /**
+    * Plays a map held in memory silently against the given agent.
+    * @return the result, as for play
+    */
+   static int play( BufferedReader map, Agent agent, int maxmoves ) throws IOException
+   {
+      Raft raft = new Raft();
+      raft.view = new char[5][5];
+      raft.read_map( map );
+      return raft.play( agent, maxmoves, true );
+   }
+
+   /**
+    * Gives the bytes the engine sends for the first view of a map.
+    */
+   static byte[] first_view( String mapName ) throws IOException
+   {
+      Raft raft = new Raft();
+      raft.view = new char[5][5];
+      raft.read_map( mapName );
+      raft.get_view();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      raft.send_view( out );
+      return out.toByteArray();
+   }
+
+   /**
+    * Sets up a game part way through on a map held in memory, for trying out
+    * actions without an agent. The map is used as it is and changed by perform.
+    * @return the engine, with the agent at row, col facing dirn
+    */
+   static Raft resume( char[][] map, int row, int col, int dirn, int homeRow, int homeCol,
+                       boolean axe, boolean key, boolean raft, boolean onRaft,
+                       boolean treasure, int dynamites )
+   {
+      Raft game = new Raft();
+      game.view = new char[5][5];
+      game.map  = map;
+      game.nrows = map.length;
+      game.row  = row;
+      game.col  = col;
+      game.dirn = dirn;
+      game.irow = homeRow;
+      game.icol = homeCol;
+      game.have_axe      = axe;
+      game.have_key      = key;
+      game.have_raft     = raft;
+      game.on_raft       = onRaft;
+      game.have_treasure = treasure;
+      game.num_dynamites_held = dynamites;
+      return game;
+   }
+
+   /**
+    * Applies actions in order, stopping early if the game ends.
+    * @return the number of actions applied if the game was won, LOST if it
+    * was lost, or 0 if it is still going
+    */
+   int perform( char[] actions, int count )
+   {
+      for( int m=1; m <= count; m++ ) {
+         apply( actions[m-1] );
+         if( game_won ) {
+            return m;
+         }
+         else if( game_lost ) {
+            return LOST;
+         }
+      }
+      return 0;
+   }
+
+   // the state of a resumed game, for carrying on from where perform stopped
+   int row()               { return row; }
+   int col()               { return col; }
+   int dirn()              { return dirn; }
+   boolean has_axe()       { return have_axe; }
+   boolean has_key()       { return have_key; }
+   boolean has_raft()      { return have_raft; }
+   boolean is_on_raft()    { return on_raft; }
+   boolean has_treasure()  { return have_treasure; }
+   int dynamites()         { return num_dynamites_held; }
+   char[][] map()          { return map; }
 }
@@ -0,0 +1,336 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Judges plans that can't be taken back, such as landing a raft or using a
+ * dynamite, by trying them out on made up completions of the map. Each
+ * completion keeps every known tile and fills in the unknown ones, clumped the
+ * way the known ones are. Every candidate plan is played on it by the game
+ * engine itself, and then the completed map, which is now known in full, is
+ * searched for a way to the treasure and back home from wherever the plan left
+ * us. The plan that still leaves a way to win on the most completions is best.
+ *
+ * Completions are played on every core at once, each trying every candidate so
+ * they are compared on the same maps, until the time given runs out.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class RolloutPlanner {
+
+   //How far past the known tiles a completion reaches before the water around it
+   private static int MARGIN = 4;
+   //The chance that an unknown tile is the same as the neighbour filled in just before it
+   private static double CLUMPING = 0.6;
+   //How long the search for a way to win may take on each completion
+   private static long SEARCH_BUDGET_NANOS = 5000000L;
+   //What a rollout is worth when the search ran out of time without an answer, out of 2
+   private static int UNDECIDED = 1;
+
+   private ExecutorService workers;
+   private int threads;
+   private long seed;
+
+   public RolloutPlanner() {
+      this.threads = Runtime.getRuntime().availableProcessors();
+      this.seed = 3411;
+   }
+   /**
+    * Stops the threads playing out the completions.
+    */
+   public void shutdown() {
+      if(workers != null) {
+         workers.shutdownNow();
+      }
+   }
+   /**
+    * Gives the candidate plan most likely to still leave a way to win. The first
+    * candidate is kept unless another does strictly better.
+    * @param model is the world model as it is now, which must not change until this returns
+    * @param candidates are the moves of each plan, all made from where we stand now
+    * @param budgetNanos is how long to keep playing out completions
+    * @return the index of the best candidate
+    */
+   public int choose(final Model model, final List<char[]> candidates, long budgetNanos) {
+      long deadline = System.nanoTime() + budgetNanos;
+      final Source source = new Source(model);
+      int[] scores = new int[candidates.size()];
+      List<Future<int[]>> running = new ArrayList<Future<int[]>>();
+      //Keep one completion queued per thread until the time is up, or the planner is cancelled
+      while(System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+         while(running.size() < threads) {
+            final long completionSeed = seed++;
+            running.add(workers().submit(new Callable<int[]>() {
+               @Override
+               public int[] call() {
+                  return playOut(source, candidates, completionSeed);
+               }
+            }));
+         }
+         Future<int[]> done = running.remove(0);
+         add(scores, waitFor(done, deadline));
+      }
+      for(Future<int[]> future : running) {
+         future.cancel(true);
+      }
+      int best = 0;
+      for(int i = 1; i < scores.length; i++) {
+         if(scores[i] > scores[best]) {
+            best = i;
+         }
+      }
+      return best;
+   }
+   /**
+    * Plays every candidate on one completion of the map.
+    * @return the score of each candidate: 2 for a way to win, 0 for none, UNDECIDED if it isn't known
+    */
+   private static int[] playOut(Source source, List<char[]> candidates, long seed) {
+      Completion completion = source.complete(new Random(seed));
+      int[] scores = new int[candidates.size()];
+      for(int i = 0; i < candidates.size(); i++) {
+         if(Thread.currentThread().isInterrupted()) {
+            return null;
+         }
+         scores[i] = completion.score(candidates.get(i));
+      }
+      return scores;
+   }
+   private static void add(int[] scores, int[] more) {
+      if(more == null) {
+         return;
+      }
+      for(int i = 0; i < scores.length; i++) {
+         scores[i] += more[i];
+      }
+   }
+   /**
+    * Waits for a completion to be played out.
+    * @return its scores, or null if it wasn't done by the deadline
+    */
+   private static int[] waitFor(Future<int[]> future, long deadline) {
+      try {
+         return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      catch(TimeoutException e) {
+         future.cancel(true);
+         return null;
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return null;
+      }
+      catch(ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      }
+   }
+   private ExecutorService workers() {
+      if(workers == null) {
+         workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread t = new Thread(r, "rollout");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      return workers;
+   }
+
+   /**
+    * What a completion is made from: the known tiles as they are now, how often
+    * each kind of tile turns up among them, and where we are and what we hold.
+    */
+   private static class Source {
+      private char[] tiles;
+      private char[] kinds;
+      private int minX, maxX, minY, maxY;
+      private boolean treasureVisible;
+      private int x, y, direction, numDynamites;
+      private boolean haveAxe, haveKey, haveRaft, haveTreasure, onRaft;
+
+      private Source(Model model) {
+         this.x = model.getLoc().x;
+         this.y = model.getLoc().y;
+         this.direction = model.getDirection();
+         this.haveAxe = model.haveAxe();
+         this.haveKey = model.haveKey();
+         this.haveRaft = model.haveRaft();
+         this.haveTreasure = model.haveTreasure();
+         this.numDynamites = model.numDynamites();
+         this.onRaft = model.getCurrentTerrain() == Model.WATER;
+         this.treasureVisible = model.treasureVisible() || model.haveTreasure();
+         this.tiles = new char[Model.WIDTH * Model.HEIGHT];
+         StringBuilder kinds = new StringBuilder();
+         minX = minY = Integer.MAX_VALUE;
+         maxX = maxY = Integer.MIN_VALUE;
+         for(int tx = -Model.MAXIMUM_X; tx <= Model.MAXIMUM_X; tx++) {
+            for(int ty = -Model.MAXIMUM_Y; ty <= Model.MAXIMUM_Y; ty++) {
+               char c = model.tileAt(tx, ty);
+               tiles[Model.index(tx, ty)] = c;
+               if(c == Model.UNEXPLORED) {
+                  continue;
+               }
+               minX = Math.min(minX, tx);
+               maxX = Math.max(maxX, tx);
+               minY = Math.min(minY, ty);
+               maxY = Math.max(maxY, ty);
+               //There is only one treasure, so it is never made up where one is known
+               if(c != Model.TREASURE) {
+                  kinds.append(c);
+               }
+            }
+         }
+         this.kinds = kinds.toString().toCharArray();
+      }
+      /**
+       * Fills in the unknown tiles near the known ones. If the treasure hasn't
+       * been seen, it is put on one of the tiles made up as open ground.
+       * @param random gives the choices made
+       * @return the completion
+       */
+      private Completion complete(Random random) {
+         Completion completion = new Completion();
+         completion.source = this;
+         int fromX = Math.max(-Model.MAXIMUM_X, minX - MARGIN);
+         int toX = Math.min(Model.MAXIMUM_X, maxX + MARGIN);
+         int fromY = Math.max(-Model.MAXIMUM_Y, minY - MARGIN);
+         int toY = Math.min(Model.MAXIMUM_Y, maxY + MARGIN);
+         //One tile of water all round, as the real maps have
+         completion.left = fromX - 1;
+         completion.top = toY + 1;
+         int width = toX - fromX + 3;
+         int height = toY - fromY + 3;
+         char[][] map = new char[height][width];
+         List<int[]> madeUpGround = new ArrayList<int[]>();
+         for(int row = 0; row < height; row++) {
+            for(int col = 0; col < width; col++) {
+               int tx = completion.left + col;
+               int ty = completion.top - row;
+               if(row == 0 || col == 0 || row == height - 1 || col == width - 1) {
+                  map[row][col] = Model.WATER;
+                  continue;
+               }
+               char c = tiles[Model.index(tx, ty)];
+               if(c == Model.UNEXPLORED) {
+                  c = madeUp(map, row, col, random);
+                  if(c == Model.PLAIN) {
+                     madeUpGround.add(new int[] {row, col});
+                  }
+               }
+               map[row][col] = c;
+            }
+         }
+         if(!treasureVisible && !madeUpGround.isEmpty()) {
+            int[] spot = madeUpGround.get(random.nextInt(madeUpGround.size()));
+            map[spot[0]][spot[1]] = Model.TREASURE;
+         }
+         //The engine keeps what is under the agent as open ground
+         map[completion.top - y][x - completion.left] = Model.PLAIN;
+         completion.map = map;
+         return completion;
+      }
+      /**
+       * Makes up an unknown tile, often copying the one to its left or above so
+       * walls and water come in clumps rather than scattered.
+       */
+      private char madeUp(char[][] map, int row, int col, Random random) {
+         if(random.nextDouble() < CLUMPING) {
+            char neighbour = random.nextBoolean() ? map[row][col - 1] : map[row - 1][col];
+            if(neighbour != Model.TREASURE) {
+               return neighbour;
+            }
+         }
+         if(kinds.length == 0) {
+            return Model.PLAIN;
+         }
+         return kinds[random.nextInt(kinds.length)];
+      }
+   }
+
+   /**
+    * One made up completion of the map, laid out for the game engine.
+    */
+   private static class Completion {
+      //Rows of the engine's map, from the top, and the model coordinates of its top left tile
+      private char[][] map;
+      private int top;
+      private int left;
+      private Source source;
+
+      /**
+       * Plays a candidate plan on a copy of this completion and checks whether a
+       * way to win is left afterwards.
+       * @param moves are the moves of the plan
+       * @return 2 if there is a way to win, 0 if not, or UNDECIDED if the search ran out of time
+       */
+      private int score(char[] moves) {
+         Source s = source;
+         char[][] copy = new char[map.length][];
+         for(int row = 0; row < map.length; row++) {
+            copy[row] = map[row].clone();
+         }
+         Raft game = Raft.resume(copy, top - s.y, s.x - left, engineDirection(s.direction),
+               top, -left, s.haveAxe, s.haveKey, s.haveRaft, s.onRaft, s.haveTreasure, s.numDynamites);
+         int result = game.perform(moves, moves.length);
+         if(result == Raft.LOST) {
+            return 0;
+         }
+         if(result > 0) {
+            return 2;
+         }
+         Model after = afterwards(game);
+         InventorySearch search = new InventorySearch(after);
+         if(search.search(SEARCH_BUDGET_NANOS)) {
+            return 2;
+         }
+         return search.isExhausted() ? 0 : UNDECIDED;
+      }
+      /**
+       * Gives a model of this completion, known in full, as the game has left it.
+       */
+      private Model afterwards(Raft game) {
+         char[] known = new char[Model.WIDTH * Model.HEIGHT];
+         Arrays.fill(known, Model.UNEXPLORED);
+         char[][] played = game.map();
+         for(int row = 0; row < played.length; row++) {
+            for(int col = 0; col < played[row].length; col++) {
+               int tx = left + col;
+               int ty = top - row;
+               if(Model.inBounds(tx, ty)) {
+                  known[Model.index(tx, ty)] = played[row][col];
+               }
+            }
+         }
+         int x = left + game.col();
+         int y = top - game.row();
+         known[Model.index(x, y)] = game.is_on_raft() ? Model.WATER : Model.PLAIN;
+         return Model.known(known, x, y, modelDirection(game.dirn()), game.has_axe(), game.has_key(),
+               game.has_raft(), game.has_treasure(), game.dynamites());
+      }
+      private static int engineDirection(int direction) {
+         switch(direction) {
+            case Model.UP:
+               return Raft.NORTH;
+            case Model.RIGHT:
+               return Raft.EAST;
+            case Model.DOWN:
+               return Raft.SOUTH;
+            default:
+               return Raft.WEST;
+         }
+      }
+      private static int modelDirection(int dirn) {
+         switch(dirn) {
+            case Raft.NORTH:
+               return Model.UP;
+            case Raft.EAST:
+               return Model.RIGHT;
+            case Raft.SOUTH:
+               return Model.DOWN;
+            default:
+               return Model.LEFT;
+         }
+      }
+   }
+}
@@ -0,0 +1,30 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the nodes expanded by every search since the program started, so a
+ * benchmark can tell whether a change made the agent search more. Each search
+ * keeps its own count and adds it once when it finishes, so counting costs
+ * nothing inside the search loops.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public final class SearchStats {
+   
+   private static final AtomicLong nodesExpanded = new AtomicLong();
+   
+   private SearchStats() {
+   }
+   /**
+    * Adds to the count of nodes expanded.
+    * @param nodes is the number of nodes a search expanded
+    */
+   static void addExpanded(long nodes) {
+      nodesExpanded.addAndGet(nodes);
+   }
+   /**
+    * @return the number of nodes expanded by all searches so far
+    */
+   static long nodesExpanded() {
+      return nodesExpanded.get();
+   }
+}
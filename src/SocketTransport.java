@@ -0,0 +1,53 @@
+import java.io.*;
+import java.net.*;
+
+/**
+ * The TCP transport. The engine listens on a port and the agent connects to it.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class SocketTransport implements Transport {
+   
+   private Socket socket;
+   
+   private SocketTransport(Socket socket) {
+      this.socket = socket;
+   }
+   /**
+    * Waits for a single agent to connect on the given port.
+    * @param port is the port to listen on
+    * @return the transport to the agent
+    * @throws IOException if the port can't be listened on
+    */
+   public static SocketTransport accept(int port) throws IOException {
+      ServerSocket serverSocket = new ServerSocket(port);
+      try {
+         return new SocketTransport(serverSocket.accept());
+      }
+      finally {
+         serverSocket.close();
+      }
+   }
+   /**
+    * Connects to an engine listening on the given port.
+    * @param host is the machine the engine runs on
+    * @param port is the port the engine listens on
+    * @return the transport to the engine
+    * @throws IOException if the engine can't be reached
+    */
+   public static SocketTransport connect(String host, int port) throws IOException {
+      return new SocketTransport(new Socket(host, port));
+   }
+   @Override
+   public InputStream getInputStream() throws IOException {
+      return socket.getInputStream();
+   }
+   @Override
+   public OutputStream getOutputStream() throws IOException {
+      return socket.getOutputStream();
+   }
+   @Override
+   public void close() throws IOException {
+      socket.close();
+   }
+}
@@ -0,0 +1,36 @@
+/**
+ * A fixed size table counting how often each state of the game has been
+ * planned from, for spotting when the agent is going round in circles. States
+ * are given by their hash from Model.stateHash. Each hash has one slot, and a
+ * state landing on a slot held by another one takes it over, so the table never
+ * grows and only forgets states that have not come back for a while.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class StateHistory {
+
+   private long[] hashes;
+   private int[] counts;
+
+   /**
+    * Creates an empty table.
+    * @param capacity is the number of slots, which must be a power of two
+    */
+   public StateHistory(int capacity) {
+      this.hashes = new long[capacity];
+      this.counts = new int[capacity];
+   }
+   /**
+    * Counts another visit to a state.
+    * @param hash is the hash of the state
+    * @return how many times the state has been visited, counting this one
+    */
+   public int visit(long hash) {
+      int slot = (int)(hash ^ (hash >>> 32)) & (hashes.length - 1);
+      if(hashes[slot] != hash || counts[slot] == 0) {
+         hashes[slot] = hash;
+         counts[slot] = 0;
+      }
+      return ++counts[slot];
+   }
+}
@@ -0,0 +1,179 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Races several ways of deciding what to do next against each other, each on
+ * its own copy of the model so they can run at the same time without getting in
+ * each other's way. The strategies are:
+ * 1. The priority list, as the decider would plan without the portfolio
+ * 2. The same list, but exploring by scoring every frontier tile
+ * 3. When the treasure is in sight, the round trip search over what we could
+ *    pick up, given the whole time rather than the list's share of it
+ *
+ * A round trip is a way to win, so it is taken as soon as it is found. Otherwise
+ * the priority list is taken, unless both lists went exploring and the frontier
+ * scoring one reveals more of the map for each move. The priority list is always
+ * waited for, as it is what the agent would do anyway. The others only count if
+ * they are done by the deadline, and are cancelled once a plan is chosen. The
+ * searches they run check for interruption, so a cancelled strategy stops
+ * within a search step and its thread is free for the next choice.
+ *
+ * @author Mendel Liang, Alexander Ong
+ */
+public class StrategyPortfolio {
+
+   //One thread for each strategy
+   private static int THREADS = 3;
+
+   private ExecutorService workers;
+
+   /**
+    * A plan made by one of the strategies: its moves, and the item lists as
+    * they are left by making it.
+    */
+   static class Plan {
+      private char[] moves;
+      private Model.Goals goals;
+
+      private Plan(char[] moves, Model.Goals goals) {
+         this.moves = moves;
+         this.goals = goals;
+      }
+      char[] moves() {
+         return moves;
+      }
+      Model.Goals goals() {
+         return goals;
+      }
+   }
+
+   /**
+    * Stops the threads running the strategies.
+    */
+   public void shutdown() {
+      if(workers != null) {
+         workers.shutdownNow();
+      }
+   }
+   /**
+    * Runs every strategy and gives the plan chosen from them.
+    * @param model is the world model as it is now, which must not change until this returns
+    * @param budgetNanos is how long the strategies other than the priority list may take
+    * @return the plan chosen, or null if interrupted before the priority list was done
+    */
+   public Plan choose(final Model model, long budgetNanos) {
+      final long deadline = System.nanoTime() + budgetNanos;
+      //Measured once here, so the copies share them rather than each measuring their own
+      model.getLandmarks();
+      //Copied here rather than on the workers, as a worker still running after this returns
+      //would otherwise be copying a model that has moved on
+      Future<Plan> listed = submit(model.snapshot(), false);
+      Future<Plan> scored = submit(model.snapshot(), true);
+      Future<Plan> roundTrip = null;
+      if(model.treasureVisible() && !model.haveTreasure()) {
+         final Model copy = model.snapshot();
+         roundTrip = workers().submit(new Callable<Plan>() {
+            @Override
+            public Plan call() {
+               char[] moves = new Decider(copy, false).planRoundTrip(deadline - System.nanoTime());
+               return (moves == null) ? null : new Plan(moves, copy.saveGoals());
+            }
+         });
+      }
+      Plan chosen = (roundTrip == null) ? null : waitFor(roundTrip, deadline);
+      if(chosen != null) {
+         listed.cancel(true);
+         scored.cancel(true);
+         return chosen;
+      }
+      Plan frontier = waitFor(scored, deadline);
+      chosen = waitFor(listed, Long.MAX_VALUE);
+      if(chosen == null || frontier == null) {
+         return chosen;
+      }
+      //A list plan revealing nothing went for an item or a tool, which exploring must not override
+      double listRevealed = revealedPerMove(model, chosen.moves);
+      if(listRevealed > 0 && revealedPerMove(model, frontier.moves) > listRevealed) {
+         chosen = frontier;
+      }
+      return chosen;
+   }
+   /**
+    * Starts a decider planning with the priority list on a copy of the model.
+    * @param copy is the copy of the model for the decider to plan on
+    * @param scoreFrontier is whether the decider explores by scoring every frontier tile
+    */
+   private Future<Plan> submit(final Model copy, final boolean scoreFrontier) {
+      return workers().submit(new Callable<Plan>() {
+         @Override
+         public Plan call() {
+            char[] moves = new Decider(copy, scoreFrontier).planMoves();
+            return new Plan(moves, copy.saveGoals());
+         }
+      });
+   }
+   /**
+    * Gives how many unknown tiles come into view along a plan for each move it takes.
+    * @param model is the world model the plan is made from
+    * @param moves are the moves of the plan
+    * @return the unknown tiles revealed per move
+    */
+   private static double revealedPerMove(Model model, char[] moves) {
+      BitSet revealed = new BitSet(Model.WIDTH * Model.HEIGHT);
+      int x = model.getLoc().x;
+      int y = model.getLoc().y;
+      int direction = model.getDirection();
+      for(char move : moves) {
+         if(move != Model.MOVE_FORWARD) {
+            direction = Movement.turn(direction, move);
+            continue;
+         }
+         x += Movement.DX[direction];
+         y += Movement.DY[direction];
+         for(int dx = -2; dx <= 2; dx++) {
+            for(int dy = -2; dy <= 2; dy++) {
+               if(Model.inBounds(x + dx, y + dy) && model.tileAt(x + dx, y + dy) == Model.UNEXPLORED) {
+                  revealed.set(Model.index(x + dx, y + dy));
+               }
+            }
+         }
+      }
+      return (double) revealed.cardinality() / Math.max(1, moves.length);
+   }
+   /**
+    * Waits for a strategy to finish, cancelling it if it isn't done by the deadline.
+    * @return its plan, or null if it had none or wasn't done in time
+    */
+   private static Plan waitFor(Future<Plan> future, long deadline) {
+      try {
+         if(deadline == Long.MAX_VALUE) {
+            return future.get();
+         }
+         return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      catch(TimeoutException e) {
+         future.cancel(true);
+         return null;
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return null;
+      }
+      catch(ExecutionException e) {
+         throw new RuntimeException(e.getCause());
+      }
+   }
+   private ExecutorService workers() {
+      if(workers == null) {
+         workers = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread t = new Thread(r, "strategy");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      return workers;
+   }
+}
@@ -0,0 +1,65 @@
+import java.nio.*;
+
+/**
+ * Storage for one tile character per cell of the model's grid. Tiles are kept
+ * either in a plain char array or, when the JVM is started with
+ * -Draft.offheap=true or the agent with -x offheap, in a direct ByteBuffer
+ * outside the Java heap, so that many games running in one JVM don't each add
+ * a large grid for the garbage collector to look after. Every tile is an ASCII
+ * character, so the off-heap version stores one byte per tile.
+ * 
+ * Cells are addressed by Model.index.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public abstract class TileGrid {
+   
+   static final boolean OFF_HEAP = Boolean.getBoolean("raft.offheap");
+   
+   public abstract char get(int index);
+   
+   public abstract void set(int index, char tile);
+   
+   /**
+    * Creates a grid the size of the model's grid, filled with the given tile.
+    * @param fill is the tile every cell starts as
+    * @return the grid, off the heap if the JVM was asked for it
+    */
+   public static TileGrid allocate(char fill) {
+      TileGrid grid = OFF_HEAP ? new DirectTileGrid(Model.WIDTH * Model.HEIGHT) : new HeapTileGrid(Model.WIDTH * Model.HEIGHT);
+      for(int i = 0; i < Model.WIDTH * Model.HEIGHT; i++) {
+         grid.set(i, fill);
+      }
+      return grid;
+   }
+   private static class HeapTileGrid extends TileGrid {
+      private char[] tiles;
+      
+      private HeapTileGrid(int size) {
+         this.tiles = new char[size];
+      }
+      @Override
+      public char get(int index) {
+         return tiles[index];
+      }
+      @Override
+      public void set(int index, char tile) {
+         tiles[index] = tile;
+      }
+   }
+   private static class DirectTileGrid extends TileGrid {
+      private ByteBuffer tiles;
+      
+      private DirectTileGrid(int size) {
+         this.tiles = ByteBuffer.allocateDirect(size);
+      }
+      @Override
+      public char get(int index) {
+         return (char)(tiles.get(index) & 0xff);
+      }
+      @Override
+      public void set(int index, char tile) {
+         tiles.put(index, (byte)tile);
+      }
+   }
+}
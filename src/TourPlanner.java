@@ -0,0 +1,215 @@
+import java.awt.Point;
+import java.util.*;
+
+/**
+ * This class decides the order in which a set of goals (tools to pick up, doors
+ * to unlock) should be visited. Picking them up greedily in a fixed priority
+ * order can send the agent back and forth across the map, so instead the goals
+ * are treated as a travelling salesman tour starting at the agent's location.
+ * 
+ * A distance field is computed once per goal and kept until the world model
+ * changes, so the pairwise distances between goals are just array lookups.
+ * Small tours are solved exactly with the Held-Karp dynamic programming
+ * algorithm, larger ones start from a nearest neighbour tour that is improved
+ * with 2-opt moves until it stops improving or the time budget runs out.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public class TourPlanner {
+   
+   //Held-Karp uses 2^n * n memory, so past this many goals we fall back on 2-opt
+   private static int EXACT_LIMIT = 12;
+   
+   private Map<Point, DistanceField> fields;
+   private int fieldsVersion;
+   
+   public TourPlanner() {
+      this.fields = new HashMap<Point, DistanceField>();
+      this.fieldsVersion = -1;
+   }
+   /**
+    * Orders the goals such that visiting them in turn from the agent's location
+    * takes as few steps as possible. Goals that cannot currently be reached are
+    * left out of the tour.
+    * @param model is the current world model
+    * @param goals are the locations to visit
+    * @param budgetNanos is how long the planner may spend improving the tour
+    * @return the reachable goals in visiting order
+    */
+   public List<Point> plan(Model model, List<Point> goals, long budgetNanos) {
+      long deadline = System.nanoTime() + budgetNanos;
+      if(model.getVersion() != fieldsVersion) {
+         for(DistanceField field : fields.values()) {
+            field.release();
+         }
+         fields.clear();
+         fieldsVersion = model.getVersion();
+      }
+      Point start = model.getLoc();
+      List<Point> reachable = new ArrayList<Point>();
+      List<DistanceField> goalFields = new ArrayList<DistanceField>();
+      for(Point goal : goals) {
+         if(reachable.contains(goal)) {
+            continue;
+         }
+         DistanceField field = fieldFor(model, goal);
+         if(field.distanceTo(start) != DistanceField.UNREACHABLE) {
+            reachable.add(goal);
+            goalFields.add(field);
+         }
+      }
+      int n = reachable.size();
+      if(n <= 1) {
+         return reachable;
+      }
+      //startDist[i] is the distance from the agent to goal i, dist[i][j] between goals i and j
+      int[] startDist = new int[n];
+      int[][] dist = new int[n][n];
+      for(int i = 0; i < n; i++) {
+         startDist[i] = goalFields.get(i).distanceTo(start);
+         for(int j = 0; j < n; j++) {
+            dist[i][j] = goalFields.get(i).distanceTo(reachable.get(j));
+         }
+      }
+      int[] order = null;
+      if(n <= EXACT_LIMIT) {
+         order = heldKarp(startDist, dist, deadline);
+      }
+      if(order == null) {
+         order = nearestNeighbour(startDist, dist);
+         twoOpt(order, startDist, dist, deadline);
+      }
+      List<Point> tour = new ArrayList<Point>();
+      for(int i : order) {
+         tour.add(reachable.get(i));
+      }
+      return tour;
+   }
+   /**
+    * Gets the distance field for a goal, computing it if the cached one is out of date.
+    * @param model is the current world model
+    * @param goal is the source of the distance field
+    * @return the distance field from the goal
+    */
+   private DistanceField fieldFor(Model model, Point goal) {
+      DistanceField field = fields.get(goal);
+      if(field == null) {
+         field = new DistanceField(model, goal, model.haveAxe(), model.haveKey(), model.haveRaft());
+         fields.put(goal, field);
+      }
+      return field;
+   }
+   /**
+    * Finds the shortest open tour exactly with the Held-Karp algorithm.
+    * @param startDist distances from the agent to each goal
+    * @param dist distances between each pair of goals
+    * @param deadline the System.nanoTime() at which to give up
+    * @return the optimal visiting order, or null if the deadline was reached
+    */
+   private static int[] heldKarp(int[] startDist, int[][] dist, long deadline) {
+      int n = startDist.length;
+      int full = 1 << n;
+      //cost[mask][j] is the shortest walk from the agent through the goals in mask, ending on goal j
+      int[][] cost = new int[full][n];
+      int[][] parent = new int[full][n];
+      for(int[] row : cost) {
+         Arrays.fill(row, Integer.MAX_VALUE);
+      }
+      for(int j = 0; j < n; j++) {
+         cost[1 << j][j] = startDist[j];
+         parent[1 << j][j] = -1;
+      }
+      for(int mask = 1; mask < full; mask++) {
+         if((mask & 0xff) == 0 && System.nanoTime() > deadline) {
+            return null;
+         }
+         for(int j = 0; j < n; j++) {
+            if((mask & (1 << j)) == 0 || cost[mask][j] == Integer.MAX_VALUE) {
+               continue;
+            }
+            for(int k = 0; k < n; k++) {
+               if((mask & (1 << k)) != 0 || dist[j][k] == DistanceField.UNREACHABLE) {
+                  continue;
+               }
+               int next = mask | (1 << k);
+               int newCost = cost[mask][j] + dist[j][k];
+               if(newCost < cost[next][k]) {
+                  cost[next][k] = newCost;
+                  parent[next][k] = j;
+               }
+            }
+         }
+      }
+      int last = 0;
+      for(int j = 1; j < n; j++) {
+         if(cost[full - 1][j] < cost[full - 1][last]) {
+            last = j;
+         }
+      }
+      int[] order = new int[n];
+      int mask = full - 1;
+      for(int i = n - 1; i >= 0; i--) {
+         order[i] = last;
+         int prev = parent[mask][last];
+         mask &= ~(1 << last);
+         last = prev;
+      }
+      return order;
+   }
+   /**
+    * Builds a tour by always going to the closest goal not yet visited.
+    * @param startDist distances from the agent to each goal
+    * @param dist distances between each pair of goals
+    * @return the greedy visiting order
+    */
+   private static int[] nearestNeighbour(int[] startDist, int[][] dist) {
+      int n = startDist.length;
+      int[] order = new int[n];
+      boolean[] used = new boolean[n];
+      int[] fromDist = startDist;
+      for(int i = 0; i < n; i++) {
+         int best = -1;
+         for(int j = 0; j < n; j++) {
+            if(!used[j] && (best == -1 || fromDist[j] < fromDist[best])) {
+               best = j;
+            }
+         }
+         order[i] = best;
+         used[best] = true;
+         fromDist = dist[best];
+      }
+      return order;
+   }
+   /**
+    * Improves an open tour in place by reversing segments while that shortens it.
+    * @param order the visiting order to improve
+    * @param startDist distances from the agent to each goal
+    * @param dist distances between each pair of goals
+    * @param deadline the System.nanoTime() at which to stop
+    */
+   private static void twoOpt(int[] order, int[] startDist, int[][] dist, long deadline) {
+      int n = order.length;
+      boolean improved = true;
+      while(improved && System.nanoTime() < deadline) {
+         improved = false;
+         for(int i = 0; i < n - 1; i++) {
+            for(int j = i + 1; j < n; j++) {
+               long before = (i == 0) ? startDist[order[i]] : dist[order[i - 1]][order[i]];
+               long after = (i == 0) ? startDist[order[j]] : dist[order[i - 1]][order[j]];
+               if(j + 1 < n) {
+                  before += dist[order[j]][order[j + 1]];
+                  after += dist[order[i]][order[j + 1]];
+               }
+               if(after < before) {
+                  for(int a = i, b = j; a < b; a++, b--) {
+                     int tmp = order[a];
+                     order[a] = order[b];
+                     order[b] = tmp;
+                  }
+                  improved = true;
+               }
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,16 @@
+import java.io.*;
+
+/**
+ * A two way byte channel between the game engine and the agent. The engine
+ * sends views and the agent sends actions, both as plain bytes, so all either
+ * side needs is a pair of streams. SocketTransport talks over TCP and
+ * MappedTransport over a memory mapped file shared by both processes.
+ * 
+ * @author Mendel Liang, Alexander Ong
+ */
+public interface Transport extends Closeable {
+   
+   public InputStream getInputStream() throws IOException;
+   
+   public OutputStream getOutputStream() throws IOException;
+}